@@ -0,0 +1,201 @@
+/******************************************************************************
+ *  Compilation:  javac-algs4 BitParallelPercolation.java
+ *  Execution:    java-algs4  BitParallelPercolation N T seed
+ *  Dependencies: algs4.StdOut PercolationStats
+ *
+ *  Runs percolation trials on an N-by-N grid whose rows are bit masks: bit c
+ *  of a row is column c, so a row of up to 64 sites is one long and filling
+ *  a whole run of open sites is a few word operations. Intended for small
+ *  grids (N up to a few hundred) where per-site union-find work dominates.
+ *
+ *  The main() benchmark times T trials of the BIT_PARALLEL and PERMUTATION
+ *  experiments of PercolationStats on one thread, after a warm-up run.
+ *
+ *  Written by Ramin Halviatti
+ ******************************************************************************/
+
+import java.util.SplittableRandom;
+import edu.princeton.cs.algs4.StdOut;
+
+/**
+ *  The <tt>BitParallelPercolation</tt> class computes percolation thresholds
+ *  one trial per call, reusing its grid between trials.
+ *  <p>
+ *  A trial opens sites in a uniformly random order (a partial Fisher-Yates
+ *  shuffle of a reused array) and keeps the set of full sites up to date as
+ *  it goes: a new site that touches the top row or a full site starts a
+ *  flood. The flood works a row at a time: it fills every open run of the
+ *  row that holds a new full site with an addition that carries through the
+ *  run (and the same on the bit-reversed row for the other direction), and
+ *  passes the new full sites to the rows above and below. Every site becomes
+ *  full at most once, so a trial costs time proportional to the sites it
+ *  opens plus the rows its floods touch, with no union-find at all. The trial
+ *  stops as soon as a site of the bottom row is full.
+ *  <p>
+ *  Memory is three longs per 64 sites of a row plus one int per site.
+ *
+ *  @author Ramin Halviatti
+ */
+public class BitParallelPercolation {
+    private final int sizeN;
+    private final int sites;
+    private final int words;        // longs per row
+    private final long[] open;      // open[r*words + w] = open sites of row r, columns 64w..64w+63
+    private final long[] full;      // full sites, same layout
+    private final long[] pending;   // full sites not yet filled along their row
+    private final long[] filled;    // scratch for one row
+    private final int[] order;      // sites, shuffled a prefix at a time
+    private final int[] stack;      // rows with pending sites
+    private final boolean[] queued; // queued[r] = row r is on stack
+    private int top;                // number of rows on stack
+    private boolean percolates;     // is a site of the bottom row full?
+
+    public BitParallelPercolation(int N) {
+        if (N <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "Percolation size cannot be a negative number.");
+        if (N > 46340)
+            throw new java.lang.IllegalArgumentException(
+                "Grid is too large for bit-parallel trials.");
+        sizeN = N;
+        sites = N*N;
+        words = (N + 63) >>> 6;
+        open = new long[N * words];
+        full = new long[N * words];
+        pending = new long[N * words];
+        filled = new long[words];
+        order = new int[sites];
+        for (int i = 0; i < sites; i++)
+            order[i] = i;
+        stack = new int[N];
+        queued = new boolean[N];
+    }
+
+    // run one trial and return its percolation threshold
+    public double threshold(SplittableRandom random) {
+        java.util.Arrays.fill(open, 0L);
+        java.util.Arrays.fill(full, 0L);
+        java.util.Arrays.fill(pending, 0L);
+        percolates = false;
+        // any arrangement of order is a fine start for the shuffle, so the
+        // previous trial's is not undone
+        for (int i = 0; i < sites; i++) {
+            int j = i + random.nextInt(sites - i);
+            int site = order[j];
+            order[j] = order[i];
+            order[i] = site;
+            open(site / sizeN, site % sizeN);
+            if (percolates)
+                return (double) (i + 1) / (double) sites;
+        }
+        // a fully open grid percolates, so the loop has returned
+        throw new java.lang.IllegalStateException("Trial did not percolate.");
+    }
+
+    // open site (r, c) and flood from it if it touches the top row or a full site
+    private void open(int r, int c) {
+        int w = r*words + (c >>> 6);
+        long bit = 1L << c;
+        open[w] |= bit;
+        // left and right neighbours in the same word, then across word edges;
+        // no site past column N-1 is ever full
+        long near = full[w] & ((bit << 1) | (bit >>> 1));
+        if (bit == 1L && (c & ~63) != 0)
+            near |= full[w - 1] >>> 63;
+        else if (bit == 1L << 63 && c + 1 < sizeN)
+            near |= full[w + 1] & 1L;
+        if (r == 0 || near != 0L || (r > 0 && (full[w - words] & bit) != 0L)
+                   || (r < sizeN - 1 && (full[w + words] & bit) != 0L)) {
+            pending[w] |= bit;
+            push(r);
+            flood();
+        }
+    }
+
+    private void push(int r) {
+        if (!queued[r]) {
+            queued[r] = true;
+            stack[top++] = r;
+        }
+    }
+
+    // fill the rows on the stack from their pending sites until no row changes
+    // or the bottom row is reached
+    private void flood() {
+        while (top > 0 && !percolates) {
+            int r = stack[--top];
+            queued[r] = false;
+            int base = r*words;
+            // fill word by word going right, then carry back going left
+            long carry = 0L;
+            for (int w = 0; w < words; w++) {
+                filled[w] = runs(open[base + w], pending[base + w] | carry);
+                carry = filled[w] >>> 63;
+                pending[base + w] = 0L;
+            }
+            for (int w = words - 2; w >= 0; w--)
+                if ((filled[w + 1] & 1L) != 0L)
+                    filled[w] = runs(open[base + w], filled[w] | (1L << 63));
+
+            long changed = 0L;
+            for (int w = 0; w < words; w++) {
+                long added = filled[w] & ~full[base + w];
+                if (added == 0L)
+                    continue;
+                full[base + w] |= added;
+                changed |= added;
+                if (r > 0)
+                    spread(added, r - 1, w);
+                if (r < sizeN - 1)
+                    spread(added, r + 1, w);
+            }
+            if (r == sizeN - 1 && changed != 0L)
+                percolates = true;
+        }
+        // after an early stop the stack still holds rows; drop them
+        while (top > 0)
+            queued[stack[--top]] = false;
+    }
+
+    // hand the sites of word w that became full to the same columns of row q
+    private void spread(long added, int q, int w) {
+        int i = q*words + w;
+        long seeds = added & open[i] & ~full[i];
+        if (seeds != 0L) {
+            pending[i] |= seeds;
+            push(q);
+        }
+    }
+
+    // the runs of set bits of x that hold a bit of s: adding s carries from
+    // the lowest seed to the top of its run, reversing the word does the same
+    // downwards
+    private static long runs(long x, long s) {
+        s &= x;
+        if (s == 0L)
+            return 0L;
+        long up = (((x + s) ^ x) & x) | s;
+        long rx = Long.reverse(x);
+        long rs = Long.reverse(s);
+        long down = Long.reverse((((rx + rs) ^ rx) & rx) | rs);
+        return up | down;
+    }
+
+    // times T trials of each experiment on one thread, after a warm-up run
+    public static void main(String[] args) {
+        int N = Integer.parseInt(args[0]);
+        int T = Integer.parseInt(args[1]);
+        long seed = Long.parseLong(args[2]);
+        PercolationStats.Experiment[] experiments = {
+            PercolationStats.Experiment.BIT_PARALLEL, PercolationStats.Experiment.PERMUTATION
+        };
+        for (PercolationStats.Experiment experiment : experiments)
+            new PercolationStats(N, Math.max(1, T / 10), seed, 1, experiment);
+        for (PercolationStats.Experiment experiment : experiments) {
+            long start = System.nanoTime();
+            PercolationStats stats = new PercolationStats(N, T, seed, 1, experiment);
+            long ms = (System.nanoTime() - start) / 1000000;
+            StdOut.printf("%-13s %6d ms   mean = %.6f%n", experiment, ms, stats.mean());
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/******************************************************************************
+ *  Compilation:  javac-algs4 FlaggedQuickUnionUF.java Percolation.java ConcurrentPercolation.java
+ *  Execution:    java-algs4  ConcurrentPercolation N threads
+ *  Dependencies: Percolation (for the self-check in main), algs4.StdOut
+ *
+ *  A Percolation system that many threads can open() at the same time. The
+ *  open sites live in atomic bitmaps and the union-find is wait-free: roots
+ *  are linked with a single compareAndSet and find() halves paths with
+ *  compareAndSet, so no thread ever blocks another.
+ *
+ *  Written by Ramin Halviatti
+ ******************************************************************************/
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntBinaryOperator;
+import edu.princeton.cs.algs4.StdOut;
+
+/**
+ *  The <tt>ConcurrentPercolation</tt> class has the API of <tt>Percolation</tt>
+ *  and may be shared by any number of threads without locking.
+ *  <p>
+ *  Like <tt>Percolation</tt> it uses one union-find whose roots carry "touches
+ *  top" and "touches bottom" bits. Roots are linked by index: the root whose
+ *  index has the smaller hashed priority is pointed at the other one, which
+ *  keeps the forest acyclic without ranks and behaves like random linking.
+ *  Flags only ever gain bits. Before a root is linked its bits are copied into
+ *  the new parent, and after the link they are pushed up to whatever the root
+ *  has become, so a bit is never lost when two links race.
+ *  <p>
+ *  An open() first claims its site in a private bitmap, announces it in a
+ *  per-thread slot, does its unions and sets the percolation latch, and only
+ *  then publishes the site in the open bitmap that <em>isOpen</em> reads.
+ *  Neighbours are joined if they are claimed, so two sites opened side by
+ *  side at the same time always meet. Any thread may finish an announced
+ *  open on its owner's behalf; the steps are idempotent.
+ *  <p>
+ *  Guarantees: <em>open</em>, <em>isOpen</em>, <em>isFull</em> and
+ *  <em>percolates</em> are linearizable, and an open() takes effect when
+ *  its site is published. A site reads as open only once all its unions
+ *  are done, so its neighbours already read as full if it does. Reads of
+ *  <em>isFull</em> and <em>percolates</em> first finish every announced,
+ *  unpublished open, then read, and retry if an open was announced or
+ *  published in between, so they never see half of one.
+ *  <p>
+ *  Every loop is bounded, so every operation is wait-free. Links only point
+ *  from a root to a root of higher priority and path halving keeps that
+ *  order, so find() and the root chase in pushFlags() take at most one step
+ *  per site. A failed link CAS means the lower root was linked upwards, so
+ *  each retry of union() starts from a pair whose lower priority is strictly
+ *  higher: at most one retry per site. A bitmap CAS fails only when another
+ *  of the 63 other bits in its word is set, which happens once per bit. A
+ *  read retries only when some open is announced or published during it;
+ *  the read finishes the announced ones itself, so each open can cost it
+ *  only a few retries (once per thread finishing it, at most).
+ *
+ *  @author Ramin Halviatti
+ */
+public class ConcurrentPercolation {
+    private static final int TOP    = 1;   // component touches the top row
+    private static final int BOTTOM = 2;   // component touches the bottom row
+    private static final IntBinaryOperator OR = new IntBinaryOperator() {
+        public int applyAsInt(int a, int b) {
+            return a | b;
+        }
+    };
+
+    private final int sizeN;
+    private final AtomicLongArray siteStatus;   // bit s = site s is open (published)
+    private final AtomicLongArray claimed;      // bit s = an open() of site s has begun
+    private final AtomicIntegerArray parent;    // parent[s] = parent of site s
+    private final AtomicIntegerArray flags;     // flags[s] = status bits, complete at roots
+    private volatile boolean percolates;
+    private final AtomicLong publishes = new AtomicLong();  // bumped before each publish
+    private final AtomicReference<AtomicInteger[]> slots =  // one per thread that opened
+        new AtomicReference<AtomicInteger[]>(new AtomicInteger[0]);
+    private final ThreadLocal<AtomicInteger> slot = new ThreadLocal<AtomicInteger>() {
+        protected AtomicInteger initialValue() {
+            return register();
+        }
+    };
+
+    public ConcurrentPercolation(int N) {
+        if (N <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "Percolation size cannot be a negative number.");
+        sizeN = N;
+        int sites = N*N;
+        siteStatus = new AtomicLongArray((sites + 63) >>> 6);
+        claimed = new AtomicLongArray((sites + 63) >>> 6);
+        parent = new AtomicIntegerArray(sites);
+        flags = new AtomicIntegerArray(sites);
+        for (int s = 0; s < sites; s++)
+            parent.set(s, s);
+    }
+
+    public void open(int i, int j) {
+        checkBounds(i, j);
+        int site = xyTo1D(i, j);
+        // only the thread that claims the site announces it
+        if (!setBit(claimed, site))
+            return;
+        AtomicInteger mine = slot.get();
+        mine.set(site);
+        finish(site);
+        mine.set(-1);
+    }
+
+    public boolean isOpen(int i, int j) {
+        checkBounds(i, j);
+        return isOpen(xyTo1D(i, j));
+    }
+
+    public boolean isFull(int i, int j) {
+        checkBounds(i, j);
+        int site = xyTo1D(i, j);
+        while (true) {
+            long stamp = settle();
+            boolean full = isOpen(site) && (flags.get(find(site)) & TOP) != 0;
+            if (unchanged(stamp))
+                return full;
+        }
+    }
+
+    public boolean percolates() {
+        while (true) {
+            long stamp = settle();
+            boolean result = percolates;
+            if (unchanged(stamp))
+                return result;
+        }
+    }
+
+    private boolean isOpen(int site) {
+        return (siteStatus.get(site >>> 6) & (1L << site)) != 0;
+    }
+
+    private boolean isClaimed(int site) {
+        return (claimed.get(site >>> 6) & (1L << site)) != 0;
+    }
+
+    // do the unions of a claimed site, set the latch, then publish it; any
+    // thread may call this, and calls after the first change nothing
+    private void finish(int site) {
+        if (isOpen(site))
+            return;
+        int i = site / sizeN + 1;
+        int j = site % sizeN + 1;
+        int status = 0;
+        if (i == 1)
+            status |= TOP;
+        if (i == sizeN)
+            status |= BOTTOM;
+        if (status != 0)
+            status = pushFlags(site, status);
+        if (i > 1 && isClaimed(site - sizeN))
+            status |= union(site, site - sizeN);
+        if (i < sizeN && isClaimed(site + sizeN))
+            status |= union(site, site + sizeN);
+        if (j > 1 && isClaimed(site - 1))
+            status |= union(site, site - 1);
+        if (j < sizeN && isClaimed(site + 1))
+            status |= union(site, site + 1);
+        if (status == (TOP | BOTTOM))
+            percolates = true;
+        // bump first, so a read that saw part of this open sees the stamp move
+        publishes.incrementAndGet();
+        setBit(siteStatus, site);
+    }
+
+    // finish every announced open that is not yet published; returns the
+    // publish stamp read before a pass that found none
+    private long settle() {
+        while (true) {
+            long stamp = publishes.get();
+            boolean idle = true;
+            for (AtomicInteger s : slots.get()) {
+                int site = s.get();
+                if (site >= 0 && !isOpen(site)) {
+                    finish(site);
+                    idle = false;
+                }
+            }
+            if (idle)
+                return stamp;
+        }
+    }
+
+    // true if no open was published or left half done since settle() returned stamp
+    private boolean unchanged(long stamp) {
+        if (publishes.get() != stamp)
+            return false;
+        for (AtomicInteger s : slots.get()) {
+            int site = s.get();
+            if (site >= 0 && !isOpen(site))
+                return false;
+        }
+        return true;
+    }
+
+    // add a slot for the calling thread to the shared array
+    private AtomicInteger register() {
+        AtomicInteger mine = new AtomicInteger(-1);
+        while (true) {
+            AtomicInteger[] old = slots.get();
+            AtomicInteger[] grown = java.util.Arrays.copyOf(old, old.length + 1);
+            grown[old.length] = mine;
+            if (slots.compareAndSet(old, grown))
+                return mine;
+        }
+    }
+
+    // set bit site of bits; false if another thread already had
+    private static boolean setBit(AtomicLongArray bits, int site) {
+        int word = site >>> 6;
+        long bit = 1L << site;
+        while (true) {
+            long old = bits.get(word);
+            if ((old & bit) != 0)
+                return false;
+            if (bits.compareAndSet(word, old, old | bit))
+                return true;
+        }
+    }
+
+    // root of p, halving the path with compareAndSet on the way up
+    private int find(int p) {
+        while (true) {
+            int up = parent.get(p);
+            if (up == p)
+                return p;
+            int grand = parent.get(up);
+            if (up != grand)
+                parent.compareAndSet(p, up, grand);
+            p = grand;
+        }
+    }
+
+    // merge the components of p and q and return the bits known at the new root
+    private int union(int p, int q) {
+        while (true) {
+            int rootP = find(p);
+            int rootQ = find(q);
+            if (rootP == rootQ)
+                return pushFlags(rootP, 0);
+            // link the root of smaller priority under the other one
+            if (priority(rootP) > priority(rootQ)) {
+                int t = rootP;
+                rootP = rootQ;
+                rootQ = t;
+            }
+            // copy the bits first so the new root is never missing them
+            int bits = pushFlags(rootQ, flags.get(rootP));
+            if (bits == (TOP | BOTTOM))
+                percolates = true;
+            if (parent.compareAndSet(rootP, rootP, rootQ))
+                // bits may have reached rootP while it was being linked
+                return pushFlags(rootP, 0);
+        }
+    }
+
+    // OR the bits of p and extra into the current root of p; returns the root's bits.
+    // If the root is linked while we write, the loop follows it to the new root.
+    private int pushFlags(int p, int extra) {
+        int bits = flags.get(p) | extra;
+        int root = find(p);
+        while (true) {
+            int merged = flags.accumulateAndGet(root, bits, OR);
+            int next = find(root);
+            if (next == root) {
+                if (merged == (TOP | BOTTOM))
+                    percolates = true;
+                return merged;
+            }
+            root = next;
+        }
+    }
+
+    // bijective mix of the site index, so linking by it behaves like random linking
+    private static int priority(int site) {
+        int h = site * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void checkBounds(int i, int j) {
+        if (i <= 0 || i > sizeN || j <= 0 || j > sizeN)
+            throw new IndexOutOfBoundsException("checkBounds: index out of bounds");
+    }
+
+    private int xyTo1D(int i, int j) {
+        // Map from row column to a 0-based row-major index used by the union-find
+        return (i - 1) * sizeN + (j - 1);
+    }
+
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+
+    // open random sites from several threads while another thread checks that
+    // reads never run ahead of each other, then compare with a sequential Percolation
+    public static void main(String[] args) throws InterruptedException {
+        final int N = Integer.parseInt(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        final ConcurrentPercolation perc = new ConcurrentPercolation(N);
+        SplittableRandom root = new SplittableRandom(42);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final SplittableRandom random = root.split();
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int k = 0; k < N*N*0.6 && !perc.percolates(); k++)
+                        perc.open(random.nextInt(N) + 1, random.nextInt(N) + 1);
+                }
+            });
+            workers[t].start();
+        }
+        // each check reads in an order that a linearizable object must honour:
+        // a full site is open, a full bottom site means the system percolates,
+        // and an open neighbour of a full site is full
+        final SplittableRandom random = root.split();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong checks = new AtomicLong();
+        final AtomicLong violations = new AtomicLong();
+        Thread checker = new Thread(new Runnable() {
+            public void run() {
+                while (N > 1 && !done.get()) {
+                    int i = random.nextInt(N) + 1;
+                    int j = random.nextInt(N - 1) + 1;
+                    boolean openB = perc.isOpen(i, j + 1);
+                    boolean fullA = perc.isFull(i, j);
+                    if (fullA && !perc.isOpen(i, j))
+                        violations.incrementAndGet();
+                    if (fullA && openB && !perc.isFull(i, j + 1))
+                        violations.incrementAndGet();
+                    if (perc.isFull(N, j) && !perc.percolates())
+                        violations.incrementAndGet();
+                    checks.incrementAndGet();
+                }
+            }
+        });
+        checker.start();
+        for (Thread worker : workers)
+            worker.join();
+        done.set(true);
+        checker.join();
+        verify(violations.get() == 0,
+               "no read ran ahead of another in " + checks.get() + " concurrent checks");
+
+        Percolation expected = new Percolation(N);
+        for (int i = 1; i <= N; i++)
+            for (int j = 1; j <= N; j++)
+                if (perc.isOpen(i, j))
+                    expected.open(i, j);
+        boolean same = true;
+        for (int i = 1; i <= N; i++)
+            for (int j = 1; j <= N; j++)
+                same &= (perc.isFull(i, j) == expected.isFull(i, j));
+        verify(same, "isFull() matches sequential Percolation");
+        verify(perc.percolates() == expected.percolates(),
+               "percolates() matches sequential Percolation");
+    }
+}
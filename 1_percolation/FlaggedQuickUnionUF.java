@@ -0,0 +1,225 @@
+/******************************************************************************
+ *  Compilation:  javac FlaggedQuickUnionUF.java
+ *  Dependencies: none
+ *
+ *  Weighted quick-union by rank with path halving, where the root of every
+ *  component also carries a small set of status bits (flags). The flags of
+ *  two components are OR-ed together when they are merged, so a question such
+ *  as "does this component touch the top row?" is a find() plus a byte read.
+ *  An undoable instance keeps a log of every change and can be rolled back.
+ *
+ *  Written by Ramin Halviatti
+ ******************************************************************************/
+
+/**
+ *  The <tt>FlaggedQuickUnionUF</tt> class is the union-find core shared by the
+ *  percolation data types. It is a drop-in for <tt>WeightedQuickUnionUF</tt>
+ *  with two differences: ranks are kept in a byte per element instead of a
+ *  size int, and each component root owns a byte of flags.
+ *  <p>
+ *  <em>union</em>, <em>find</em> and <em>flags</em> take amortized time
+ *  proportional to the inverse Ackermann function; the structure uses
+ *  6 bytes per element.
+ *  <p>
+ *  An undoable instance never compresses paths, so every change is a write to
+ *  a root that can be recorded and reverted: <em>find</em> is then O(log n)
+ *  by union by rank, <em>mark</em> is constant time and <em>rollback</em>
+ *  takes time proportional to the number of changes it reverts.
+ *
+ *  @author Ramin Halviatti
+ */
+public class FlaggedQuickUnionUF {
+    private int[] parent;   // parent[i] = parent of i
+    private byte[] rank;    // rank[i] = rank of subtree rooted at i (never more than 31)
+    private byte[] flags;   // flags[i] = status bits of component, valid at roots only
+    private int count;      // number of components
+    private int[] undoLog;  // pairs (root, saved): root >= 0 a union that linked root,
+                            // root < 0 a flag change on ~root; null unless undoable
+    private int logSize;    // ints used in undoLog
+    private PercolationMetrics metrics;   // counters, only used when metrics are enabled
+
+    /**
+     * Initializes an empty union-find data structure with <tt>n</tt> isolated
+     * elements and no flags set.
+     * @param n the number of elements
+     */
+    public FlaggedQuickUnionUF(int n) {
+        this(n, false);
+    }
+
+    /**
+     * Initializes an empty union-find data structure that, if <tt>undoable</tt>,
+     * records every change so it can be reverted with <tt>rollback</tt>.
+     * @param n the number of elements
+     * @param undoable whether to keep an undo log (and skip path compression)
+     */
+    public FlaggedQuickUnionUF(int n, boolean undoable) {
+        if (n < 0)
+            throw new IllegalArgumentException("Number of elements cannot be negative.");
+        count = n;
+        parent = new int[n];
+        rank = new byte[n];
+        flags = new byte[n];
+        for (int i = 0; i < n; i++)
+            parent[i] = i;
+        if (undoable)
+            undoLog = new int[16];
+    }
+
+    // number of components
+    public int count() {
+        return count;
+    }
+
+    // component identifier for p, halving the path on the way up unless undoable
+    public int find(int p) {
+        if (PercolationMetrics.ENABLED && metrics != null)
+            return countedFind(p);
+        if (undoLog != null) {
+            while (p != parent[p])
+                p = parent[p];
+            return p;
+        }
+        while (p != parent[p]) {
+            parent[p] = parent[parent[p]];
+            p = parent[p];
+        }
+        return p;
+    }
+
+    // find() that also records the length of the path it followed
+    private int countedFind(int p) {
+        int length = 0;
+        while (p != parent[p]) {
+            if (undoLog == null)
+                parent[p] = parent[parent[p]];
+            p = parent[p];
+            length++;
+        }
+        metrics.recordFind(length);
+        return p;
+    }
+
+    // are p and q in the same component?
+    public boolean connected(int p, int q) {
+        return find(p) == find(q);
+    }
+
+    // status bits of the component containing p
+    public int flags(int p) {
+        return flags[find(p)];
+    }
+
+    // set status bits on the component containing p and return the merged bits
+    public int addFlags(int p, int bits) {
+        int root = find(p);
+        if (undoLog != null && (flags[root] | bits) != flags[root])
+            log(~root, flags[root]);
+        flags[root] |= (byte) bits;
+        return flags[root];
+    }
+
+    // merge the components containing p and q and return the merged status bits
+    public int union(int p, int q) {
+        int rootP = find(p);
+        int rootQ = find(q);
+        if (rootP == rootQ)
+            return flags[rootP];
+
+        // make the root of smaller rank point to the root of larger rank
+        if (rank[rootP] < rank[rootQ]) {
+            int t = rootP;
+            rootP = rootQ;
+            rootQ = t;
+        }
+        if (undoLog != null)
+            log(rootQ, (rank[rootP] << 8) | (flags[rootP] & 0xff));
+        parent[rootQ] = rootP;
+        if (rank[rootP] == rank[rootQ])
+            rank[rootP]++;
+        flags[rootP] |= flags[rootQ];
+        count--;
+        if (PercolationMetrics.ENABLED && metrics != null)
+            metrics.unions++;
+        return flags[rootP];
+    }
+
+    // back to n isolated elements with no flags and an empty undo log,
+    // without allocating
+    public void reset() {
+        for (int i = 0; i < parent.length; i++)
+            parent[i] = i;
+        java.util.Arrays.fill(rank, (byte) 0);
+        java.util.Arrays.fill(flags, (byte) 0);
+        count = parent.length;
+        logSize = 0;
+    }
+
+    // position in the undo log to pass to rollback() later
+    public int mark() {
+        if (undoLog == null)
+            throw new UnsupportedOperationException(
+                "This union-find does not keep an undo log.");
+        return logSize;
+    }
+
+    // revert every union and flag change made since mark() returned the given value
+    public void rollback(int mark) {
+        if (undoLog == null)
+            throw new UnsupportedOperationException(
+                "This union-find does not keep an undo log.");
+        if (mark < 0 || mark > logSize || (mark & 1) != 0)
+            throw new IllegalArgumentException("Invalid undo log mark: " + mark);
+        while (logSize > mark) {
+            int saved = undoLog[--logSize];
+            int root = undoLog[--logSize];
+            if (root < 0) {
+                flags[~root] = (byte) saved;
+            }
+            else {
+                int newRoot = parent[root];
+                parent[root] = root;
+                rank[newRoot] = (byte) (saved >> 8);
+                flags[newRoot] = (byte) saved;
+                count++;
+            }
+        }
+    }
+
+    // count finds and unions into the given metrics (when metrics are enabled)
+    void setMetrics(PercolationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // raw parent of p, used to snapshot the structure
+    int parent(int p) {
+        return parent[p];
+    }
+
+    // rank of p, meaningful at roots only
+    int rank(int p) {
+        return rank[p];
+    }
+
+    // status bits stored at p, meaningful at roots only
+    int rootFlags(int p) {
+        return flags[p];
+    }
+
+    // restore element p from a snapshot; the caller restores every element
+    // of a fresh instance and must leave no undo log behind
+    void restore(int p, int parentOfP, int rankOfP, int flagsOfP) {
+        if (parent[p] == p && parentOfP != p)
+            count--;
+        parent[p] = parentOfP;
+        rank[p] = (byte) rankOfP;
+        flags[p] = (byte) flagsOfP;
+    }
+
+    private void log(int root, int saved) {
+        if (logSize == undoLog.length)
+            undoLog = java.util.Arrays.copyOf(undoLog, 2*undoLog.length);
+        undoLog[logSize++] = root;
+        undoLog[logSize++] = saved;
+    }
+}
@@ -0,0 +1,324 @@
+/******************************************************************************
+ *  Compilation:  javac-algs4 FlaggedQuickUnionUF.java PercolationMetrics.java Percolation.java LatticePercolation.java
+ *  Execution:    java-algs4  LatticePercolation SITE|BOND seed d0 d1 ...
+ *  Dependencies: FlaggedQuickUnionUF, Percolation (for the self-check in main),
+ *                algs4.StdOut
+ *
+ *  Site or bond percolation on a box lattice of any dimension: a W-by-H
+ *  rectangle, an L-by-L-by-L cube, and so on. Axis 0 is the direction of
+ *  percolation, so the "top" is the face with coordinate 0 on axis 0 and the
+ *  "bottom" the face with coordinate d0 - 1.
+ *
+ *  Written by Ramin Halviatti
+ ******************************************************************************/
+
+import java.util.SplittableRandom;
+import edu.princeton.cs.algs4.StdOut;
+
+/**
+ *  The <tt>LatticePercolation</tt> class generalizes <tt>Percolation</tt> to
+ *  rectangular and higher-dimensional grids and to bond percolation.
+ *  <p>
+ *  Sites are numbered in row-major order of their coordinates. In site
+ *  percolation the elements that open are the sites; in bond percolation
+ *  every site is present and the elements are the bonds between nearest
+ *  neighbours, numbered by site and then by axis, so bond b joins
+ *  bondFrom(b) and bondTo(b).
+ *  <p>
+ *  Neighbour lists (compressed, one offset per site) and bond endpoints are
+ *  computed once by the constructor and shared, read-only, by every
+ *  <em>emptyCopy</em>. As in <tt>Percolation</tt> a single
+ *  <tt>FlaggedQuickUnionUF</tt> whose roots carry top and bottom bits answers
+ *  <em>isFull</em> and <em>percolates</em>; <em>reset</em> empties the lattice
+ *  in place, so a worker can run any number of trials without allocating.
+ *
+ *  @author Ramin Halviatti
+ */
+public class LatticePercolation {
+    // what opens: sites, or the bonds between neighbouring sites
+    public enum Kind {
+        SITE,
+        BOND
+    }
+
+    private static final int TOP    = 1;   // component touches the top face
+    private static final int BOTTOM = 2;   // component touches the bottom face
+
+    private final Kind kind;
+    private final int[] dims;           // extent of every axis, axis 0 percolates
+    private final int sites;
+    private final int faceSize;         // sites on the top (and bottom) face
+    private final int[] neighbourStart; // neighbours of s are neighbours[neighbourStart[s] ..
+    private final int[] neighbours;     //   neighbourStart[s+1]), null for BOND lattices
+    private final int[] bondEnds;       // bond b joins bondEnds[2b] and bondEnds[2b+1], null for SITE
+    private final boolean[] elementStatus;
+    private final FlaggedQuickUnionUF uf;
+    private boolean percolates;
+    private int openCount;              // number of open elements
+
+    public LatticePercolation(Kind kind, int... dims) {
+        if (kind == null)
+            throw new java.lang.NullPointerException("Lattice kind cannot be null.");
+        if (dims == null || dims.length == 0)
+            throw new java.lang.IllegalArgumentException("A lattice needs at least one axis.");
+        long size = 1;
+        for (int d : dims) {
+            if (d <= 0)
+                throw new java.lang.IllegalArgumentException(
+                    "Lattice size cannot be a negative number.");
+            size *= d;
+            if (size > Integer.MAX_VALUE)
+                throw new java.lang.IllegalArgumentException("Lattice is too large.");
+        }
+        this.kind = kind;
+        this.dims = dims.clone();
+        sites = (int) size;
+        faceSize = sites / dims[0];
+
+        // count the bonds: along axis a every site but the last in its line has one
+        long bonds = 0;
+        for (int d : dims)
+            bonds += (long) (sites / d) * (d - 1);
+        if (2 * bonds > Integer.MAX_VALUE)
+            throw new java.lang.IllegalArgumentException("Lattice is too large.");
+        if (kind == Kind.SITE) {
+            neighbourStart = new int[sites + 1];
+            neighbours = new int[(int) (2 * bonds)];
+            bondEnds = null;
+            buildNeighbours();
+            elementStatus = new boolean[sites];
+        }
+        else {
+            neighbourStart = null;
+            neighbours = null;
+            bondEnds = new int[(int) (2 * bonds)];
+            buildBonds();
+            elementStatus = new boolean[(int) bonds];
+        }
+        uf = new FlaggedQuickUnionUF(sites);
+        reset();
+    }
+
+    // a new empty lattice sharing this one's neighbour tables
+    private LatticePercolation(LatticePercolation prototype) {
+        kind = prototype.kind;
+        dims = prototype.dims;
+        sites = prototype.sites;
+        faceSize = prototype.faceSize;
+        neighbourStart = prototype.neighbourStart;
+        neighbours = prototype.neighbours;
+        bondEnds = prototype.bondEnds;
+        elementStatus = new boolean[prototype.elementStatus.length];
+        uf = new FlaggedQuickUnionUF(sites);
+        reset();
+    }
+
+    // fill the compressed neighbour lists of every site
+    private void buildNeighbours() {
+        int k = 0;
+        for (int s = 0; s < sites; s++) {
+            neighbourStart[s] = k;
+            int stride = sites;
+            int rest = s;
+            for (int a = 0; a < dims.length; a++) {
+                stride /= dims[a];
+                int x = rest / stride;
+                rest %= stride;
+                if (x > 0)
+                    neighbours[k++] = s - stride;
+                if (x < dims[a] - 1)
+                    neighbours[k++] = s + stride;
+            }
+        }
+        neighbourStart[sites] = k;
+    }
+
+    // list the endpoints of every bond, by site and then by axis
+    private void buildBonds() {
+        int k = 0;
+        for (int s = 0; s < sites; s++) {
+            int stride = sites;
+            int rest = s;
+            for (int a = 0; a < dims.length; a++) {
+                stride /= dims[a];
+                int x = rest / stride;
+                rest %= stride;
+                if (x < dims[a] - 1) {
+                    bondEnds[k++] = s;
+                    bondEnds[k++] = s + stride;
+                }
+            }
+        }
+    }
+
+    // an empty lattice of the same kind and shape; the neighbour tables are shared
+    public LatticePercolation emptyCopy() {
+        return new LatticePercolation(this);
+    }
+
+    // close every element again, without allocating
+    public void reset() {
+        java.util.Arrays.fill(elementStatus, false);
+        uf.reset();
+        percolates = false;
+        openCount = 0;
+        if (kind == Kind.BOND) {
+            // every site is present, so the faces carry their bits from the start
+            for (int s = 0; s < faceSize; s++) {
+                uf.addFlags(s, TOP);
+                if (uf.addFlags(sites - faceSize + s, BOTTOM) == (TOP | BOTTOM))
+                    percolates = true;
+            }
+        }
+    }
+
+    // open element e (a site or a bond, by kind) if it is not open already
+    public void open(int e) {
+        checkElement(e);
+        if (elementStatus[e])
+            return;
+        elementStatus[e] = true;
+        openCount++;
+        int status;
+        if (kind == Kind.BOND) {
+            status = uf.union(bondEnds[2*e], bondEnds[2*e + 1]);
+        }
+        else {
+            status = 0;
+            if (e < faceSize)
+                status |= TOP;
+            if (e >= sites - faceSize)
+                status |= BOTTOM;
+            if (status != 0)
+                status = uf.addFlags(e, status);
+            for (int k = neighbourStart[e]; k < neighbourStart[e + 1]; k++)
+                if (elementStatus[neighbours[k]])
+                    status = uf.union(e, neighbours[k]);
+        }
+        if (status == (TOP | BOTTOM))
+            percolates = true;
+    }
+
+    // is element e (a site or a bond, by kind) open?
+    public boolean isOpen(int e) {
+        checkElement(e);
+        return elementStatus[e];
+    }
+
+    // is site s connected to the top face through open elements?
+    public boolean isFull(int s) {
+        if (s < 0 || s >= sites)
+            throw new IndexOutOfBoundsException("isFull: site out of bounds");
+        if (kind == Kind.SITE && !elementStatus[s])
+            return false;
+        return (uf.flags(s) & TOP) != 0;
+    }
+
+    public boolean percolates() {
+        return percolates;
+    }
+
+    public int numberOfOpenElements() {
+        return openCount;
+    }
+
+    // number of sites or bonds that can be opened
+    public int elements() {
+        return elementStatus.length;
+    }
+
+    public int sites() {
+        return sites;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public int[] dimensions() {
+        return dims.clone();
+    }
+
+    // row-major index of the site at the given 0-based coordinates
+    public int site(int... coordinates) {
+        if (coordinates.length != dims.length)
+            throw new java.lang.IllegalArgumentException(
+                "Expected " + dims.length + " coordinates.");
+        int s = 0;
+        for (int a = 0; a < dims.length; a++) {
+            if (coordinates[a] < 0 || coordinates[a] >= dims[a])
+                throw new IndexOutOfBoundsException("site: coordinate out of bounds");
+            s = s * dims[a] + coordinates[a];
+        }
+        return s;
+    }
+
+    // endpoints of bond b
+    public int bondFrom(int b) {
+        checkBond(b);
+        return bondEnds[2*b];
+    }
+
+    public int bondTo(int b) {
+        checkBond(b);
+        return bondEnds[2*b + 1];
+    }
+
+    private void checkBond(int b) {
+        if (kind != Kind.BOND)
+            throw new UnsupportedOperationException("A site lattice has no bonds.");
+        checkElement(b);
+    }
+
+    private void checkElement(int e) {
+        if (e < 0 || e >= elementStatus.length)
+            throw new IndexOutOfBoundsException("checkElement: index out of bounds");
+    }
+
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+
+    // open random elements until the lattice percolates and print the threshold;
+    // a square site lattice is also checked against Percolation
+    public static void main(String[] args) {
+        Kind kind = Kind.valueOf(args[0]);
+        SplittableRandom random = new SplittableRandom(Long.parseLong(args[1]));
+        int[] dims = new int[args.length - 2];
+        for (int a = 0; a < dims.length; a++)
+            dims[a] = Integer.parseInt(args[a + 2]);
+        LatticePercolation lattice = new LatticePercolation(kind, dims);
+
+        boolean square = kind == Kind.SITE && dims.length == 2 && dims[0] == dims[1];
+        Percolation expected = square ? new Percolation(dims[0]) : null;
+        boolean same = true;
+        while (!lattice.percolates()) {
+            int e = random.nextInt(lattice.elements());
+            lattice.open(e);
+            if (square) {
+                expected.open(e / dims[0] + 1, e % dims[0] + 1);
+                same &= lattice.percolates() == expected.percolates();
+            }
+        }
+        StdOut.println("threshold\t = "
+                       + (double) lattice.numberOfOpenElements() / lattice.elements());
+        if (square) {
+            for (int s = 0; s < lattice.sites(); s++)
+                same &= lattice.isFull(s) == expected.isFull(s / dims[0] + 1, s % dims[0] + 1);
+            verify(same, "isFull() and percolates() match Percolation");
+        }
+
+        LatticePercolation copy = lattice.emptyCopy();
+        lattice.reset();
+        verify(lattice.numberOfOpenElements() == 0 && !lattice.percolates()
+               && copy.numberOfOpenElements() == 0,
+               "reset() and emptyCopy() give an empty lattice");
+    }
+}
@@ -1,93 +1,404 @@
-
 /*
  * Course: Princeton Algorithms Part 1
  * Project: Week 1 programming assignment: Percolation
- * Information: http://coursera.cs.princeton.edu/algs4/assignments/percolation.html 
- * compile: javac-algs4 Percolation.java PercolationVisualizer.java PercolationStats.java 
- * Test with PercolationVisualizer and data file: java-algs4  PercolationVisualizer input20.txt 
+ * Information: http://coursera.cs.princeton.edu/algs4/assignments/percolation.html
+ * compile: javac-algs4 FlaggedQuickUnionUF.java Percolation.java PercolationVisualizer.java PercolationStats.java
+ * Test with PercolationVisualizer and data file: java-algs4  PercolationVisualizer input20.txt
  * Test with PercolationStats: java-algs4 PercolationStats 200 10
+ *
+ * Backwash is avoided with a single union-find: instead of virtual top and
+ * bottom sites, every component root records whether the component touches
+ * the top row and/or the bottom row. isFull() reads the top bit of the site's
+ * root and percolates() is latched the first time a root carries both bits.
+ *
+ * A Percolation created with undoable = true also supports checkpoint() and
+ * rollback(): its union-find skips path compression and logs every change,
+ * so a grid can be wound back to an earlier state instead of rebuilt.
+ *
+ * save() writes a compact binary snapshot and load() restores one through a
+ * memory-mapped FileChannel instead of replaying every open(). The layout,
+ * all integers big-endian:
+ *   int   magic 'PERC', byte version (1), int N, byte percolates (0 or 1)
+ *   long  ceil(N*N / 64) words of the row-major open-site bitmap
+ *   then, for every open site in row-major order:
+ *   varint zigzag(parent - site) of its union-find parent, and if the site
+ *          is a root one more byte, (rank << 2) | top/bottom flags
+ * Blocked sites are always their own root with no rank or flags, so they
+ * take no space beyond their bitmap bit. load() also accepts the text
+ * format of input20.txt (N followed by row column pairs) and replays it.
+ *
+ * With -Dpercolation.metrics=true every grid counts its opens, unions and
+ * finds in a PercolationMetrics, available from metrics().
  */
-import edu.princeton.cs.algs4.WeightedQuickUnionUF;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import edu.princeton.cs.algs4.In;
 
 public class Percolation {
-    private boolean[] siteStatus;      
-    private WeightedQuickUnionUF uf;
-    private WeightedQuickUnionUF uf4Full;
+    private static final int SNAPSHOT_MAGIC   = 0x50455243;   // "PERC"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int TOP    = 1;   // component touches the top row
+    private static final int BOTTOM = 2;   // component touches the bottom row
+
+    private static final byte FULL     = 1;   // fullSites() scratch values
+    private static final byte NOT_FULL = 2;
+
+    private boolean[] siteStatus;
+    private FlaggedQuickUnionUF uf;
     private int sizeN;
-    private int vTop;
-    private int vBottom;
+    private boolean percolates;
+    private int openCount;        // number of open sites
+    private int[] openLog;        // sites in the order they were opened, null unless undoable
+    private int[] ufMarkLog;      // ufMarkLog[k] = uf.mark() before the k-th open
+    private int opened;           // number of entries in openLog
+    private int percolatedAt;     // number of opens when percolates was latched
+    private PercolationMetrics metrics;   // null unless metrics are enabled
+    private byte[] fullScratch;   // fullSites(): per-site FULL or NOT_FULL, 0 until resolved
 
     public Percolation(int N) {
+        this(N, false);
+    }
+
+    public Percolation(int N, boolean undoable) {
         // Validate argument
         if (N <= 0)
             throw new java.lang.IllegalArgumentException(
                 "Percolation size cannot be a negative number.");
-        // Initialize sites to zero
+        // Initialize sites to blocked
         sizeN = N;
-        vTop = 0;
-        vBottom = sizeN*sizeN + 1;
-        siteStatus = new boolean[sizeN*sizeN + 2];
-        for (int i = 0; i < sizeN*sizeN + 2; i++)
-            siteStatus[i] = false;
-        // Initialize the weighted-quick-union-find instances
-        uf = new WeightedQuickUnionUF(sizeN*sizeN + 2);
-        uf4Full = new WeightedQuickUnionUF(sizeN*sizeN + 2);
+        siteStatus = new boolean[sizeN*sizeN];
+        // Initialize the flagged union-find instance
+        uf = new FlaggedQuickUnionUF(sizeN*sizeN, undoable);
+        if (PercolationMetrics.ENABLED) {
+            metrics = new PercolationMetrics();
+            uf.setMetrics(metrics);
+        }
+        if (undoable) {
+            openLog = new int[16];
+            ufMarkLog = new int[16];
+        }
     }
 
     public void open(int i, int j) {
         // Validate and convert to site
         checkBounds(i, j);
-        int site = xyTo1D(i, j);
-        // Check if site is already open
-        if (siteStatus[ site ])
-            return;
+        openSite(xyTo1D(i, j), i, j);
+    }
+
+    public int openAll(int[] siteIndices) {
+        // Open every site in siteIndices, given as 0-based row-major indices
+        // (row * N + col), in order. The whole batch is validated once up front,
+        // so either every site is opened or none is. Returns the number of
+        // sites that were not open before.
+        if (siteIndices == null)
+            throw new java.lang.NullPointerException("Site indices cannot be null.");
+        int sites = siteStatus.length;
+        for (int k = 0; k < siteIndices.length; k++)
+            if (siteIndices[k] < 0 || siteIndices[k] >= sites)
+                throw new IndexOutOfBoundsException(
+                    "openAll: site index " + siteIndices[k] + " at position " + k + " out of bounds");
+        int newlyOpened = 0;
+        for (int k = 0; k < siteIndices.length; k++) {
+            int site = siteIndices[k];
+            int row = site / sizeN;
+            if (openSite(site, row + 1, site - row*sizeN + 1))
+                newlyOpened++;
+        }
+        return newlyOpened;
+    }
+
+    private boolean openSite(int site, int i, int j) {
+        // Open an already validated site at 1-based (i, j); false if it was open
+        if (PercolationMetrics.ENABLED)
+            metrics.opens++;
+        if (siteStatus[ site ]) {
+            if (PercolationMetrics.ENABLED)
+                metrics.redundantOpens++;
+            return false;
+        }
         // Set site status to open
         siteStatus[ site ] = true;
-        // Connect with neighbors as appropriate
-        if (i == 1) {
-            // Site is at top row, connect to top
-            uf.union(site, vTop);
-            uf4Full.union(site, vTop);
-        } 
-        else if (i == sizeN) {
-            // Site is at bottom row, do not use uf4Full to prevent "backwash"
-            uf.union(site, vBottom);
-        } 
-        else { // i > 1 or i < sizeN 
-            if (isOpen(i-1, j)) {
-                // Connect to neighbor above
-                int siteAbove = xyTo1D(i-1, j);
-                uf.union(site, siteAbove);
-                uf4Full.union(site, siteAbove);
-            }
-            if (isOpen(i+1, j)) {
-                // Connect to neighbor below 
-                int siteBelow = xyTo1D(i+1, j);
-                uf.union(site, siteBelow);
-                uf4Full.union(site, siteBelow);
-            }
+        openCount++;
+        if (openLog != null)
+            logOpen(site);
+        // Mark sites on the top and bottom rows (both for N == 1)
+        int status = 0;
+        if (i == 1)
+            status |= TOP;
+        if (i == sizeN)
+            status |= BOTTOM;
+        if (status != 0)
+            status = uf.addFlags(site, status);
+        // Connect with open neighbors, merging their flags
+        if (i > 1 && siteStatus[site - sizeN])
+            status = uf.union(site, site - sizeN);
+        if (i < sizeN && siteStatus[site + sizeN])
+            status = uf.union(site, site + sizeN);
+        if (j > 1 && siteStatus[site - 1])
+            status = uf.union(site, site - 1);
+        if (j < sizeN && siteStatus[site + 1])
+            status = uf.union(site, site + 1);
+        if (status == (TOP | BOTTOM) && !percolates) {
+            percolates = true;
+            percolatedAt = opened;
         }
-        if (j > 1 && isOpen(i, j-1)) {
-            // Connect to neighbor to the left
-            uf.union(site, site - 1);
-            uf4Full.union(site, site - 1);
-        }
-        if (j < sizeN && isOpen(i, j+1)) {
-            // Connect to neighbor to the right
-            uf.union(site, site + 1);
-            uf4Full.union(site, site + 1);
+        return true;
+    }
+
+    public int numberOfOpenSites() {
+        return openCount;
+    }
+
+    public PercolationMetrics metrics() {
+        // Counters of this grid, or null unless run with -Dpercolation.metrics=true
+        return metrics;
+    }
+
+    public int checkpoint() {
+        // Token for the current state, to pass to rollback(); only undoable grids
+        if (openLog == null)
+            throw new java.lang.UnsupportedOperationException(
+                "Percolation was not created undoable.");
+        return opened;
+    }
+
+    public void rollback(int checkpoint) {
+        // Close every site opened since checkpoint() returned the given token,
+        // in time proportional to the number of opens and unions reverted
+        if (openLog == null)
+            throw new java.lang.UnsupportedOperationException(
+                "Percolation was not created undoable.");
+        if (checkpoint < 0 || checkpoint > opened)
+            throw new java.lang.IllegalArgumentException(
+                "rollback: checkpoint is not earlier than the current state");
+        if (checkpoint == opened)
+            return;
+        uf.rollback(ufMarkLog[checkpoint]);
+        while (opened > checkpoint)
+            siteStatus[ openLog[--opened] ] = false;
+        openCount = opened;
+        if (percolates && percolatedAt > checkpoint)
+            percolates = false;
+    }
+
+    private void logOpen(int site) {
+        if (opened == openLog.length) {
+            openLog = java.util.Arrays.copyOf(openLog, 2*opened);
+            ufMarkLog = java.util.Arrays.copyOf(ufMarkLog, 2*opened);
         }
-     }
+        openLog[opened] = site;
+        ufMarkLog[opened] = uf.mark();
+        opened++;
+    }
 
     public boolean isFull(int i, int j) {
-         checkBounds(i, j);
-         if (!siteStatus[ xyTo1D(i, j) ]) 
+        checkBounds(i, j);
+        int site = xyTo1D(i, j);
+        if (!siteStatus[ site ])
             return false;
-        return uf4Full.connected(vTop, xyTo1D(i, j));
+        return (uf.flags(site) & TOP) != 0;
     }
 
     public boolean percolates() {
-        return uf.connected(vTop, vBottom);
+        return percolates;
+    }
+
+    public long[] openSites(long[] bitmap) {
+        // Row-major bitmap of open sites: site (i, j) is bit (i-1)*N + (j-1), so
+        // it lives in word [site >>> 6] at bit (site & 63). Reuses bitmap when it
+        // is large enough, otherwise allocates a new one.
+        bitmap = clearBitmap(bitmap);
+        for (int site = 0; site < siteStatus.length; site++)
+            if (siteStatus[ site ])
+                bitmap[site >>> 6] |= 1L << site;
+        return bitmap;
+    }
+
+    public long[] fullSites(long[] bitmap) {
+        // Row-major bitmap of full sites, same layout as openSites(). Each open
+        // site follows parent links only up to the first site already resolved
+        // and then marks the path it took, so every root's top bit is read
+        // once and every site is resolved once, without a find() per site.
+        bitmap = clearBitmap(bitmap);
+        if (fullScratch == null)
+            fullScratch = new byte[siteStatus.length];
+        byte[] status = fullScratch;
+        java.util.Arrays.fill(status, (byte) 0);
+        for (int site = 0; site < siteStatus.length; site++) {
+            if (!siteStatus[ site ])
+                continue;
+            if (status[ site ] == 0) {
+                int p = site;
+                while (status[ p ] == 0 && uf.parent(p) != p)
+                    p = uf.parent(p);
+                byte value = status[ p ];
+                if (value == 0)
+                    value = (uf.flags(p) & TOP) != 0 ? FULL : NOT_FULL;
+                for (int q = site; status[ q ] == 0; q = uf.parent(q))
+                    status[ q ] = value;
+            }
+            if (status[ site ] == FULL)
+                bitmap[site >>> 6] |= 1L << site;
+        }
+        return bitmap;
+    }
+
+    private long[] clearBitmap(long[] bitmap) {
+        int words = (siteStatus.length + 63) >>> 6;
+        if (bitmap == null || bitmap.length < words)
+            return new long[words];
+        java.util.Arrays.fill(bitmap, 0, words, 0L);
+        return bitmap;
+    }
+
+    public void save(String filename) {
+        // Write a binary snapshot of this grid; see the layout at the top of the file
+        int sites = siteStatus.length;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 Files.newOutputStream(Paths.get(filename)), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeByte(SNAPSHOT_VERSION);
+            out.writeInt(sizeN);
+            out.writeByte(percolates ? 1 : 0);
+            long[] bitmap = openSites(null);
+            for (long word : bitmap)
+                out.writeLong(word);
+            for (int site = 0; site < sites; site++) {
+                if (!siteStatus[ site ])
+                    continue;
+                int up = uf.parent(site);
+                int delta = up - site;
+                int zigzag = (delta << 1) ^ (delta >> 31);
+                while ((zigzag & ~0x7F) != 0) {
+                    out.writeByte((zigzag & 0x7F) | 0x80);
+                    zigzag >>>= 7;
+                }
+                out.writeByte(zigzag);
+                if (up == site)
+                    out.writeByte((uf.rank(site) << 2) | uf.rootFlags(site));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot " + filename, e);
+        }
+    }
+
+    public static Percolation load(String filename) {
+        // Restore a grid from a snapshot written by save(), or replay a text
+        // file of N followed by row column pairs. The result is not undoable.
+        Path path = Paths.get(filename);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < 4)
+                return replay(filename);
+            MappedInput in = new MappedInput(channel);
+            if (in.readInt() != SNAPSHOT_MAGIC)
+                return replay(filename);
+            int version = in.readByte();
+            if (version != SNAPSHOT_VERSION)
+                throw new java.lang.IllegalArgumentException(
+                    "Unsupported snapshot version " + version + " in " + filename);
+            Percolation perc = new Percolation(in.readInt());
+            perc.percolates = (in.readByte() != 0);
+            int sites = perc.siteStatus.length;
+            int words = (sites + 63) >>> 6;
+            for (int w = 0; w < words; w++) {
+                long word = in.readLong();
+                perc.openCount += Long.bitCount(word);
+                while (word != 0) {
+                    perc.siteStatus[(w << 6) + Long.numberOfTrailingZeros(word)] = true;
+                    word &= word - 1;
+                }
+            }
+            for (int site = 0; site < sites; site++) {
+                if (!perc.siteStatus[ site ])
+                    continue;
+                int zigzag = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = in.readByte();
+                    zigzag |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                int up = site + ((zigzag >>> 1) ^ -(zigzag & 1));
+                if (up < 0 || up >= sites)
+                    throw new java.lang.IllegalArgumentException(
+                        "Corrupt snapshot " + filename + " at site " + site);
+                if (up == site) {
+                    int packed = in.readByte() & 0xFF;
+                    perc.uf.restore(site, site, packed >>> 2, packed & (TOP | BOTTOM));
+                }
+                else {
+                    perc.uf.restore(site, up, 0, 0);
+                }
+            }
+            return perc;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read snapshot " + filename, e);
+        }
+    }
+
+    private static Percolation replay(String filename) {
+        // Text format: N, then the row column pairs to open
+        In in = new In(filename);
+        Percolation perc = new Percolation(in.readInt());
+        while (!in.isEmpty()) {
+            int i = in.readInt();
+            int j = in.readInt();
+            perc.open(i, j);
+        }
+        return perc;
+    }
+
+    // sequential reader over a file mapped in windows of at most 1 GB
+    private static class MappedInput {
+        private static final long WINDOW = 1L << 30;
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long position;        // file offset of buffer's first byte
+
+        public MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            map(0);
+        }
+        private void map(long offset) throws IOException {
+            long size = Math.min(WINDOW, channel.size() - offset);
+            if (size <= 0)
+                throw new java.lang.IllegalArgumentException("Snapshot is truncated.");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            position = offset;
+        }
+        public int readByte() throws IOException {
+            if (!buffer.hasRemaining())
+                map(position + buffer.limit());
+            return buffer.get();
+        }
+        public int readInt() throws IOException {
+            if (buffer.remaining() >= 4)
+                return buffer.getInt();
+            int value = 0;
+            for (int k = 0; k < 4; k++)
+                value = (value << 8) | (readByte() & 0xFF);
+            return value;
+        }
+        public long readLong() throws IOException {
+            if (buffer.remaining() >= 8)
+                return buffer.getLong();
+            long value = 0;
+            for (int k = 0; k < 8; k++)
+                value = (value << 8) | (readByte() & 0xFF);
+            return value;
+        }
     }
 
     private void checkBounds(int i, int j) {
@@ -96,12 +407,12 @@ public class Percolation {
     }
 
     private int xyTo1D(int i, int j) {
-        // Map from row column to a 1-dimensional index used by uf
-        return (i - 1) * sizeN + j; 
+        // Map from row column to a 0-based row-major index used by uf
+        return (i - 1) * sizeN + (j - 1);
     }
 
     public boolean isOpen(int i, int j) {
         checkBounds(i, j);
         return siteStatus[xyTo1D(i, j)];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+/******************************************************************************
+ *  Compilation:  javac PercolationMetrics.java
+ *  Dependencies: none
+ *
+ *  Counters describing how much union-find work a percolation experiment did.
+ *  Collection is switched on for the whole JVM with
+ *      java -Dpercolation.metrics=true ...
+ *  and every counting site is guarded by the static final ENABLED flag, so
+ *  when it is off the JIT removes the counting code entirely.
+ *
+ *  Written by Ramin Halviatti
+ ******************************************************************************/
+
+/**
+ *  The <tt>PercolationMetrics</tt> class holds the counters of one
+ *  <tt>Percolation</tt> (or the sum over many experiments):
+ *  open() calls and how many of them hit an already open site, union() calls
+ *  that linked two components, find() calls, and the total and maximum
+ *  number of parent links followed by a find.
+ *  <p>
+ *  A high redundant-open ratio points at the random site generator wasting
+ *  draws; a growing maximum find path points at degenerate union-find trees.
+ *
+ *  @author Ramin Halviatti
+ */
+public class PercolationMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("percolation.metrics");
+
+    long opens;            // open() calls, including openAll() entries
+    long redundantOpens;   // open() calls on a site that was already open
+    long unions;           // union() calls that linked two components
+    long finds;            // find() calls
+    long findPath;         // parent links followed by all finds
+    int maxFindPath;       // longest path followed by a single find
+
+    // add the counters of other to this one
+    public void add(PercolationMetrics other) {
+        opens += other.opens;
+        redundantOpens += other.redundantOpens;
+        unions += other.unions;
+        finds += other.finds;
+        findPath += other.findPath;
+        maxFindPath = Math.max(maxFindPath, other.maxFindPath);
+    }
+
+    // set every counter back to zero
+    public void reset() {
+        opens = 0;
+        redundantOpens = 0;
+        unions = 0;
+        finds = 0;
+        findPath = 0;
+        maxFindPath = 0;
+    }
+
+    // record one find that followed the given number of parent links
+    void recordFind(int length) {
+        finds++;
+        findPath += length;
+        if (length > maxFindPath)
+            maxFindPath = length;
+    }
+
+    public long opens() {
+        return opens;
+    }
+
+    public long redundantOpens() {
+        return redundantOpens;
+    }
+
+    public long unions() {
+        return unions;
+    }
+
+    public long finds() {
+        return finds;
+    }
+
+    public double averageFindPath() {
+        return finds == 0 ? 0.0 : (double) findPath / finds;
+    }
+
+    public int maxFindPath() {
+        return maxFindPath;
+    }
+
+    public String toString() {
+        return "opens = " + opens + " (" + redundantOpens + " redundant), unions = " + unions
+            + ", finds = " + finds + ", find path avg = " + averageFindPath()
+            + " max = " + maxFindPath;
+    }
+}
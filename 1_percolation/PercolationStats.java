@@ -2,16 +2,68 @@
  * Course: Princeton Algorithms Part 1
  * Project: Week 1 programming assignment: PercolationStats
  * Information: http://coursera.cs.princeton.edu/algs4/assignments/percolation.html 
- * compile: javac-algs4 Percolation.java PercolationVisualizer.java PercolationStats.java 
+ * compile: javac-algs4 *.java
  * Test with PercolationVisualizer and data file: java-algs4  PercolationVisualizer input20.txt 
  * Test with PercolationStats: java-algs4 PercolationStats 200 10
+ * Parallel run (seed 42 on 8 worker streams): java-algs4 PercolationStats 200 1000 42 8
+ * Permutation trials: java-algs4 PercolationStats 200 1000 42 8 PERMUTATION
+ * Rows as bit masks on small grids: java-algs4 PercolationStats 128 6400 42 8 BIT_PARALLEL
+ * Adaptive run (half-width 0.0005, at most 100000 trials, seed 42):
+ *     java-algs4 PercolationStats 200 -ci 0.0005 100000 42
+ * Union-find counters: java-algs4 -Dpercolation.metrics=true PercolationStats 200 10
+ * Other lattices (kind, T, seed, threads, then the extent of every axis; axis 0
+ * is the direction of percolation):
+ *     java-algs4 PercolationStats -lattice SITE 1000 42 8 100 400
+ *     java-algs4 PercolationStats -lattice BOND 1000 42 8 48 48 48
+ * Sharded across processes (4 shards, partial results kept in ./shards):
+ *     java-algs4 PercolationStats -local 4096 100000 42 4 PERMUTATION shards
+ *   which runs, once per missing shard file, a worker process
+ *     java-algs4 PercolationStats -shard 4096 100000 42 <shard> 4 PERMUTATION <file>
+ *   and then the equivalent of
+ *     java-algs4 PercolationStats -merge shards/shard-*-of-4.properties
+ *   -merge refuses an incomplete set of shards; -merge-partial summarizes
+ *   whichever shards are given.
+ *   Shard s runs the s-th contiguous block of the T trials from its own seed
+ *   split and writes count, mean and the Welford sum of squares M2 to a small
+ *   properties file (written to a temporary name, then renamed). Merging uses
+ *   the pairwise update of Chan et al., so a crashed run resumes by
+ *   re-running -local, which skips shards whose file already exists.
  */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import edu.princeton.cs.algs4.StdRandom;
 import edu.princeton.cs.algs4.StdStats;
 import edu.princeton.cs.algs4.StdOut;
 
 public class PercolationStats {
-    private double[] thresholdData;
+    // how a single trial chooses the next site to open
+    public enum Experiment {
+        REJECTION,      // draw (row, col) uniformly, skip sites that are already open
+        PERMUTATION,    // open sites in a lazily generated Fisher-Yates order
+        BIT_PARALLEL,   // permutation trials on the row bit masks of a BitParallelPercolation
+        ROLLBACK        // permutation trials on one undoable grid per worker, rolled back between trials
+    }
+
+    // adaptive runs never stop before this many trials, so a lucky first few
+    // results cannot close the confidence interval on their own
+    private static final int MIN_ADAPTIVE_TRIALS = 10;
+
+    private double[] thresholdData;   // every result, null for adaptive runs
+    private RunningStats running;     // streaming statistics, null unless adaptive
+    private PercolationMetrics[] experimentMetrics;   // per experiment, null unless enabled
+    private PercolationMetrics totalMetrics;          // sum over experiments, null unless enabled
     private int numT;
     public PercolationStats(int N, int T) {     
     // perform T independent experiments on an N-by-N grid
@@ -20,33 +72,580 @@ public class PercolationStats {
                 "PercolationStats cannot take negative numbers.");
         numT = T;
         thresholdData = new double[numT];
+        startMetrics(true);
         for (int i = 0; i < numT; i++) {
-            thresholdData[i] = runExperiment(N);
+            thresholdData[i] = runExperiment(N, metricsFor(i));
         }
+        sumMetrics();
     }
 
-    private double runExperiment(int N) {
-        int openedSites = 0;
+    public PercolationStats(int N, int T, long seed, int threads) {
+    // perform T independent experiments on a private ForkJoinPool of the given size
+        this(N, T, seed, threads, Experiment.REJECTION, null);
+    }
+
+    public PercolationStats(int N, int T, long seed, int threads, ExecutorService executor) {
+    // perform T independent rejection-sampling experiments on the given executor
+        this(N, T, seed, threads, Experiment.REJECTION, executor);
+    }
+
+    public PercolationStats(int N, int T, long seed, int threads, Experiment experiment) {
+    // perform T independent experiments of the given kind on a private ForkJoinPool
+        this(N, T, seed, threads, experiment, null);
+    }
+
+    public PercolationStats(int N, int T, long seed, int threads,
+                            Experiment experiment, ExecutorService executor) {
+        this(N, null, T, seed, threads, experiment, executor);
+    }
+
+    public PercolationStats(LatticePercolation lattice, int T, long seed, int threads) {
+    // perform T permutation experiments on empty copies of the given lattice,
+    // one copy per worker stream, reset between trials
+        this(0, lattice, T, seed, threads, Experiment.PERMUTATION, null);
+    }
+
+    private PercolationStats(int N, LatticePercolation lattice, int T, long seed, int threads,
+                             Experiment experiment, ExecutorService executor) {
+    // perform T independent experiments split into blocks, one per worker stream.
+    // Block b always covers the same trials and draws from the b-th split of the
+    // seed, so results are identical for a given seed and thread count no matter
+    // how the executor schedules the blocks.
+        if ((lattice == null && N <= 0) || T <= 0 || threads <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "PercolationStats cannot take negative numbers.");
+        if (experiment == null)
+            throw new java.lang.NullPointerException("Experiment cannot be null.");
+        numT = T;
+        thresholdData = new double[numT];
+        startMetrics(true);
+        int blocks = Math.min(threads, numT);
+        ExecutorService pool = executor;
+        if (pool == null)
+            pool = new ForkJoinPool(blocks);
+        try {
+            SplittableRandom root = new SplittableRandom(seed);
+            Future<?>[] futures = new Future<?>[blocks];
+            for (int b = 0; b < blocks; b++) {
+                int lo = (int) ((long) b * numT / blocks);
+                int hi = (int) ((long) (b + 1) * numT / blocks);
+                futures[b] = pool.submit(new ExperimentBlock(N, lattice, lo, hi, root.split(),
+                                                             experiment));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.lang.IllegalStateException(
+                "PercolationStats interrupted while waiting for experiments.", e);
+        }
+        catch (ExecutionException e) {
+            throw new java.lang.IllegalStateException(
+                "PercolationStats experiment failed.", e.getCause());
+        }
+        finally {
+            if (executor == null)
+                pool.shutdown();
+        }
+        sumMetrics();
+    }
+
+    public PercolationStats(int N, double halfWidth, int maxTrials, long seed) {
+    // perform permutation experiments until the 95% confidence interval is no
+    // wider than 2*halfWidth, or maxTrials experiments have run. Results are
+    // folded into running statistics, so memory stays O(1) in the trial count.
+        if (N <= 0 || maxTrials <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "PercolationStats cannot take negative numbers.");
+        if (!(halfWidth > 0))
+            throw new java.lang.IllegalArgumentException(
+                "Confidence interval half-width must be positive.");
+        running = new RunningStats();
+        startMetrics(false);
+        SplittableRandom random = new SplittableRandom(seed);
+        LazyPermutation order = new LazyPermutation(N*N);
+        while (numT < maxTrials) {
+            running.add(runPermutationExperiment(N, random, order, totalMetrics));
+            numT = running.count();
+            if (numT >= MIN_ADAPTIVE_TRIALS
+                && confidenceHi() - confidenceLo() <= 2*halfWidth)
+                break;
+        }
+    }
+
+    private PercolationStats(RunningStats merged) {
+    // statistics of experiments run elsewhere and merged into one summary
+        running = merged;
+        numT = merged.count();
+    }
+
+    // mean and variance of a stream of values (Welford's algorithm)
+    private static class RunningStats {
+        private int n;          // number of values seen
+        private double mean;    // mean of values seen
+        private double m2;      // sum of squared differences from the mean
+
+        public RunningStats() {
+        }
+        public RunningStats(int n, double mean, double m2) {
+            this.n = n;
+            this.mean = mean;
+            this.m2 = m2;
+        }
+        public void add(RunningStats other) {
+            // combine two partial summaries (Chan, Golub and LeVeque)
+            if (other.n == 0)
+                return;
+            int total = n + other.n;
+            double delta = other.mean - mean;
+            mean += delta * other.n / total;
+            m2 += other.m2 + delta * delta * ((double) n * other.n / total);
+            n = total;
+        }
+        public void add(double x) {
+            n++;
+            double delta = x - mean;
+            mean += delta / n;
+            m2 += delta * (x - mean);
+        }
+        public int count() {
+            return n;
+        }
+        public double mean() {
+            return n == 0 ? Double.NaN : mean;
+        }
+        public double stddev() {
+            // sample standard deviation, same convention as StdStats.stddev
+            return Math.sqrt(m2 / (n - 1));
+        }
+        public double m2() {
+            return m2;
+        }
+    }
+
+    public static void runShard(int N, int T, long seed, int shard, int shards,
+                                Experiment experiment, String filename) {
+    // run block [shard] of the T trials split into [shards] contiguous blocks and
+    // write its count, mean and M2 to filename. Trials are folded into running
+    // statistics as they finish, so memory stays O(1) in the trial count; each
+    // draws from the same stream a one-thread PercolationStats would use.
+        if (N <= 0 || T <= 0 || shards <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "PercolationStats cannot take negative numbers.");
+        if (shard < 0 || shard >= shards)
+            throw new IndexOutOfBoundsException("runShard: shard out of bounds");
+        int lo = (int) ((long) shard * T / shards);
+        int hi = (int) ((long) (shard + 1) * T / shards);
+        RunningStats partial = new RunningStats();
+        SplittableRandom random = new SplittableRandom(shardSeed(seed, shard)).split();
+        Trials trials = new Trials(N, null, experiment);
+        // counters are only needed by collect(), which drops them here
+        PercolationMetrics metrics = PercolationMetrics.ENABLED ? new PercolationMetrics() : null;
+        for (int i = lo; i < hi; i++)
+            partial.add(trials.next(random, metrics));
+
+        Properties result = shardKey(N, T, seed, shards, experiment);
+        result.setProperty("shard", Integer.toString(shard));
+        result.setProperty("count", Integer.toString(partial.count()));
+        result.setProperty("mean", Double.toString(partial.count() == 0 ? 0.0 : partial.mean()));
+        result.setProperty("m2", Double.toString(partial.m2()));
+        // write under a temporary name first so a crash never leaves half a file
+        Path target = Paths.get(filename);
+        Path temp = Paths.get(filename + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                result.store(out, "PercolationStats shard " + shard + " of " + shards);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not write shard " + filename, e);
+        }
+    }
+
+    public static PercolationStats merge(String... filenames) {
+    // combine the shard files of one run into a single summary; every shard
+    // must be there
+        return merge(false, filenames);
+    }
+
+    public static PercolationStats merge(boolean partial, String... filenames) {
+    // combine shard files of one run into a single summary, of only the
+    // shards given if partial is true
+        if (filenames == null || filenames.length == 0)
+            throw new java.lang.IllegalArgumentException("No shard files to merge.");
+        RunningStats merged = new RunningStats();
+        Properties key = null;
+        boolean[] seen = null;
+        for (String filename : filenames) {
+            Properties shard = readShard(filename);
+            Properties thisKey = new Properties();
+            thisKey.putAll(shard);
+            thisKey.remove("shard");
+            thisKey.remove("count");
+            thisKey.remove("mean");
+            thisKey.remove("m2");
+            if (key == null) {
+                key = thisKey;
+                seen = new boolean[Integer.parseInt(key.getProperty("shards"))];
+            }
+            else if (!key.equals(thisKey)) {
+                throw new java.lang.IllegalArgumentException(
+                    filename + " belongs to a different run: " + thisKey + " vs " + key);
+            }
+            int index = Integer.parseInt(shard.getProperty("shard"));
+            if (index < 0 || index >= seen.length || seen[index])
+                throw new java.lang.IllegalArgumentException(
+                    filename + " repeats or is outside the shards of this run.");
+            seen[index] = true;
+            merged.add(new RunningStats(Integer.parseInt(shard.getProperty("count")),
+                                        Double.parseDouble(shard.getProperty("mean")),
+                                        Double.parseDouble(shard.getProperty("m2"))));
+        }
+        if (!partial) {
+            for (int index = 0; index < seen.length; index++)
+                if (!seen[index])
+                    throw new java.lang.IllegalArgumentException(
+                        "Shard " + index + " of " + seen.length + " is missing.");
+            if (merged.count() != Integer.parseInt(key.getProperty("trials")))
+                throw new java.lang.IllegalArgumentException(
+                    "Shards hold " + merged.count() + " trials, the run has "
+                    + key.getProperty("trials") + ".");
+        }
+        return new PercolationStats(merged);
+    }
+
+    public static PercolationStats runLocal(int N, int T, long seed, int shards,
+                                            Experiment experiment, String directory) {
+    // run every shard whose file is missing from directory as its own JVM
+    // process, wait for all of them and merge the shard files
+        if (N <= 0 || T <= 0 || shards <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "PercolationStats cannot take negative numbers.");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        String[] files = new String[shards];
+        Process[] workers = new Process[shards];
+        try {
+            Files.createDirectories(Paths.get(directory));
+            for (int shard = 0; shard < shards; shard++) {
+                files[shard] = Paths.get(directory,
+                    "shard-" + shard + "-of-" + shards + ".properties").toString();
+                if (isShardDone(files[shard], N, T, seed, shards, experiment))
+                    continue;
+                ProcessBuilder builder = new ProcessBuilder(
+                    java, "-cp", classPath, "PercolationStats", "-shard",
+                    Integer.toString(N), Integer.toString(T), Long.toString(seed),
+                    Integer.toString(shard), Integer.toString(shards),
+                    experiment.name(), files[shard]);
+                builder.inheritIO();
+                workers[shard] = builder.start();
+            }
+            for (int shard = 0; shard < shards; shard++)
+                if (workers[shard] != null && workers[shard].waitFor() != 0)
+                    throw new java.lang.IllegalStateException(
+                        "Shard " + shard + " failed; re-run to resume from the shards already written.");
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not start shard workers in " + directory, e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.lang.IllegalStateException(
+                "PercolationStats interrupted while waiting for shards.", e);
+        }
+        return merge(files);
+    }
+
+    // seed of a shard: the (shard+1)-th split of the run's seed
+    private static long shardSeed(long seed, int shard) {
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int s = 0; s < shard; s++)
+            root.split();
+        return root.split().nextLong();
+    }
+
+    // parameters every shard of one run must agree on
+    private static Properties shardKey(int N, int T, long seed, int shards,
+                                       Experiment experiment) {
+        Properties key = new Properties();
+        key.setProperty("N", Integer.toString(N));
+        key.setProperty("trials", Integer.toString(T));
+        key.setProperty("seed", Long.toString(seed));
+        key.setProperty("shards", Integer.toString(shards));
+        key.setProperty("experiment", experiment.name());
+        return key;
+    }
+
+    private static Properties readShard(String filename) {
+        Properties shard = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(filename))) {
+            shard.load(in);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read shard " + filename, e);
+        }
+        for (String name : new String[] { "N", "trials", "seed", "shards", "experiment",
+                                          "shard", "count", "mean", "m2" })
+            if (shard.getProperty(name) == null)
+                throw new java.lang.IllegalArgumentException(
+                    filename + " is not a shard file (missing " + name + ").");
+        return shard;
+    }
+
+    // does filename hold a finished shard of this run?
+    private static boolean isShardDone(String filename, int N, int T, long seed,
+                                       int shards, Experiment experiment) {
+        if (!Files.exists(Paths.get(filename)))
+            return false;
+        Properties shard = readShard(filename);
+        for (java.util.Map.Entry<Object, Object> e
+                 : shardKey(N, T, seed, shards, experiment).entrySet())
+            if (!e.getValue().equals(shard.get(e.getKey())))
+                throw new java.lang.IllegalArgumentException(
+                    filename + " belongs to a different run; use another directory.");
+        return true;
+    }
+
+    // runs trials [lo, hi) on its own random stream
+    private class ExperimentBlock implements Runnable {
+        private final int N;
+        private final LatticePercolation lattice;   // null for N-by-N Percolation trials
+        private final int lo;
+        private final int hi;
+        private final SplittableRandom random;
+        private final Experiment experiment;
+
+        public ExperimentBlock(int N, LatticePercolation lattice, int lo, int hi,
+                               SplittableRandom random, Experiment experiment) {
+            this.N = N;
+            this.lattice = lattice;
+            this.lo = lo;
+            this.hi = hi;
+            this.random = random;
+            this.experiment = experiment;
+        }
+        public void run() {
+            Trials trials = new Trials(N, lattice, experiment);
+            for (int i = lo; i < hi; i++)
+                thresholdData[i] = trials.next(random, metricsFor(i));
+        }
+    }
+
+    // one worker's trials of one experiment kind, reusing its grid, lattice or
+    // permutation buffer from one trial to the next
+    private static class Trials {
+        private final int N;
+        private final Experiment experiment;
+        private final LatticePercolation lattice;   // emptied in place, null for N-by-N trials
+        private final LazyPermutation order;        // null unless trials draw from it
+        private final Percolation perc;             // wound back to empty, ROLLBACK only
+        private final int empty;                    // checkpoint of the empty perc
+        private final BitParallelPercolation grid;  // cleared by every trial, BIT_PARALLEL only
+
+        public Trials(int N, LatticePercolation lattice, Experiment experiment) {
+            this.N = N;
+            this.experiment = experiment;
+            this.lattice = lattice == null ? null : lattice.emptyCopy();
+            if (lattice != null)
+                order = new LazyPermutation(this.lattice.elements());
+            else if (experiment == Experiment.PERMUTATION || experiment == Experiment.ROLLBACK)
+                order = new LazyPermutation(N*N);
+            else
+                order = null;
+            perc = lattice == null && experiment == Experiment.ROLLBACK
+                ? new Percolation(N, true) : null;
+            empty = perc == null ? 0 : perc.checkpoint();
+            grid = lattice == null && experiment == Experiment.BIT_PARALLEL
+                ? new BitParallelPercolation(N) : null;
+        }
+        // run one trial and return its threshold; into is null when metrics are disabled
+        public double next(SplittableRandom random, PercolationMetrics into) {
+            if (lattice != null) {
+                double threshold = runLatticeExperiment(lattice, random, order);
+                lattice.reset();
+                return threshold;
+            }
+            if (experiment == Experiment.PERMUTATION)
+                return runPermutationExperiment(N, random, order, into);
+            if (experiment == Experiment.ROLLBACK) {
+                double threshold = runPermutationExperiment(perc, N, random, order, into);
+                perc.rollback(empty);
+                return threshold;
+            }
+            if (experiment == Experiment.BIT_PARALLEL)
+                return grid.threshold(random);
+            return runExperiment(N, random, into);
+        }
+    }
+
+    // Fisher-Yates shuffle of 0..n-1 generated one element at a time. Slots are
+    // only materialized when a swap touches them, and a generation stamp marks
+    // which slots belong to the current trial, so reset() is O(1) and a trial
+    // costs time proportional to the number of elements it actually draws.
+    private static class LazyPermutation {
+        private final int n;
+        private final int[] value;  // value[i] = element at slot i, if stamp[i] == generation
+        private final int[] stamp;  // stamp[i] = generation that last wrote slot i
+        private int generation;
+        private int next;           // slots [0, next) have been drawn
+
+        public LazyPermutation(int n) {
+            this.n = n;
+            value = new int[n];
+            stamp = new int[n];
+            generation = 1;
+        }
+        public void reset() {
+            next = 0;
+            if (++generation == 0) {
+                // stamps wrapped around, forget every materialized slot
+                java.util.Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+        }
+        private int get(int i) {
+            return stamp[i] == generation ? value[i] : i;
+        }
+        public int next(SplittableRandom random) {
+            int j = next + random.nextInt(n - next);
+            int drawn = get(j);
+            // slot next is consumed, only slot j needs to remember what moved there
+            value[j] = get(next);
+            stamp[j] = generation;
+            next++;
+            return drawn;
+        }
+    }
+
+    private double runExperiment(int N, PercolationMetrics into) {
+        // draws that hit an open site are no-op opens, counted as redundant
         Percolation perc = new Percolation(N);
 
         while (!perc.percolates()) {
             int row = StdRandom.uniform(N) + 1;
             int col = StdRandom.uniform(N) + 1;
-            if (!perc.isOpen(row, col)) {
-                perc.open(row, col);
-                openedSites++;
-            }
+            perc.open(row, col);
         }
+        collect(perc, into);
+        return (double) perc.numberOfOpenSites() / (double) (N*N);
+    }
+
+    private static double runExperiment(int N, SplittableRandom random,
+                                        PercolationMetrics into) {
+        Percolation perc = new Percolation(N);
+
+        while (!perc.percolates()) {
+            int row = random.nextInt(N) + 1;
+            int col = random.nextInt(N) + 1;
+            perc.open(row, col);
+        }
+        collect(perc, into);
+        return (double) perc.numberOfOpenSites() / (double) (N*N);
+    }
+
+    private static double runPermutationExperiment(int N, SplittableRandom random,
+                                                   LazyPermutation order,
+                                                   PercolationMetrics into) {
+        return runPermutationExperiment(new Percolation(N), N, random, order, into);
+    }
+
+    private static double runPermutationExperiment(Percolation perc, int N,
+                                                   SplittableRandom random,
+                                                   LazyPermutation order,
+                                                   PercolationMetrics into) {
+        // perc must be empty; every draw opens a new site, and percolates()
+        // is a latched flag read
+        int openedSites = 0;
+
+        order.reset();
+        while (!perc.percolates()) {
+            int site = order.next(random);
+            perc.open(site / N + 1, site % N + 1);
+            openedSites++;
+        }
+        collect(perc, into);
         return (double) openedSites / (double) (N*N);
     }
 
+    private static double runLatticeExperiment(LatticePercolation perc,
+                                               SplittableRandom random,
+                                               LazyPermutation order) {
+        // perc must be empty; every draw opens a new site or bond
+        order.reset();
+        while (!perc.percolates())
+            perc.open(order.next(random));
+        return (double) perc.numberOfOpenElements() / (double) perc.elements();
+    }
+
+    // allocate the metrics of a run, per experiment only if perExperiment
+    private void startMetrics(boolean perExperiment) {
+        if (!PercolationMetrics.ENABLED)
+            return;
+        totalMetrics = new PercolationMetrics();
+        if (perExperiment)
+            experimentMetrics = new PercolationMetrics[numT];
+    }
+
+    // counters for experiment i, or null when metrics are disabled
+    private PercolationMetrics metricsFor(int i) {
+        if (!PercolationMetrics.ENABLED)
+            return null;
+        experimentMetrics[i] = new PercolationMetrics();
+        return experimentMetrics[i];
+    }
+
+    // move the counters of perc's last trial into into; perc may be reused
+    private static void collect(Percolation perc, PercolationMetrics into) {
+        if (!PercolationMetrics.ENABLED)
+            return;
+        into.add(perc.metrics());
+        perc.metrics().reset();
+    }
+
+    // total the per-experiment counters once every experiment has finished
+    private void sumMetrics() {
+        if (!PercolationMetrics.ENABLED)
+            return;
+        for (PercolationMetrics m : experimentMetrics)
+            if (m != null)
+                totalMetrics.add(m);
+    }
+
+    public PercolationMetrics metrics() {
+    // union-find counters summed over all experiments, or null unless
+    // run with -Dpercolation.metrics=true
+        return totalMetrics;
+    }
+
+    public PercolationMetrics metrics(int experiment) {
+    // union-find counters of one experiment; null unless metrics are enabled,
+    // and also for adaptive runs and bit-parallel experiments (no Percolation)
+        if (experiment < 0 || experiment >= numT)
+            throw new IndexOutOfBoundsException("metrics: experiment out of bounds");
+        if (experimentMetrics == null)
+            return null;
+        return experimentMetrics[experiment];
+    }
+
+    public int trials() {
+    // number of experiments performed
+        return numT;
+    }
+
     public double mean() {
     // sample mean of percolation threshold
+        if (running != null)
+            return running.mean();
         return StdStats.mean(thresholdData);
     }
 
     public double stddev() {
     // sample standard deviation of percolation threshold 
+        if (running != null)
+            return running.stddev();
         return StdStats.stddev(thresholdData);
     }
 
@@ -64,11 +663,52 @@ public class PercolationStats {
     {
         PercolationStats percStats; 
        
-        percStats = new PercolationStats(
-            Integer.parseInt(args[0]), Integer.parseInt(args[1]));  
+        if (args[0].equals("-shard")) {
+            runShard(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                     Long.parseLong(args[3]), Integer.parseInt(args[4]),
+                     Integer.parseInt(args[5]), Experiment.valueOf(args[6]), args[7]);
+            return;
+        }
+        else if (args[0].equals("-merge"))
+            percStats = merge(java.util.Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("-merge-partial"))
+            percStats = merge(true, java.util.Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("-lattice")) {
+            int[] dims = new int[args.length - 5];
+            for (int a = 0; a < dims.length; a++)
+                dims[a] = Integer.parseInt(args[a + 5]);
+            LatticePercolation lattice = new LatticePercolation(
+                LatticePercolation.Kind.valueOf(args[1]), dims);
+            percStats = new PercolationStats(lattice, Integer.parseInt(args[2]),
+                                             Long.parseLong(args[3]), Integer.parseInt(args[4]));
+        }
+        else if (args[0].equals("-local"))
+            percStats = runLocal(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                                 Long.parseLong(args[3]), Integer.parseInt(args[4]),
+                                 Experiment.valueOf(args[5]), args[6]);
+        else if (args.length >= 5 && args[1].equals("-ci"))
+            percStats = new PercolationStats(
+                Integer.parseInt(args[0]), Double.parseDouble(args[2]),
+                Integer.parseInt(args[3]), Long.parseLong(args[4]));
+        else if (args.length >= 5)
+            percStats = new PercolationStats(
+                Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Long.parseLong(args[2]), Integer.parseInt(args[3]),
+                Experiment.valueOf(args[4]));
+        else if (args.length >= 4)
+            percStats = new PercolationStats(
+                Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Long.parseLong(args[2]), Integer.parseInt(args[3]));
+        else
+            percStats = new PercolationStats(
+                Integer.parseInt(args[0]), Integer.parseInt(args[1]));
         
+        if (percStats.thresholdData == null)
+            StdOut.println("trials\t\t\t = " + percStats.trials());
         StdOut.println("mean\t\t\t = " + percStats.mean());
         StdOut.println("stddev\t\t\t = " + percStats.stddev());
         StdOut.println("95% confidence interval\t = " + percStats.confidenceLo() + ", " + percStats.confidenceHi());
+        if (percStats.metrics() != null)
+            StdOut.println("union-find\t\t = " + percStats.metrics());
     }
 }
\ No newline at end of file
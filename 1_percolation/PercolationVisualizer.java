@@ -12,7 +12,9 @@
  *
  *  After each site is opened, it draws full sites in light blue,
  *  open sites (that aren't full) in white, and blocked sites in black,
- *  with with site (1, 1) in the upper left-hand corner.
+ *  with with site (1, 1) in the upper left-hand corner. Frames are drawn
+ *  from the bulk open/full bitmaps of Percolation, and only cells that
+ *  changed since the previous frame are redrawn.
  *
  ******************************************************************************/
 
@@ -26,33 +28,63 @@ public class PercolationVisualizer {
     // delay in miliseconds (controls animation speed)
     private static final int DELAY = 100;
 
-    // draw N-by-N percolation system
+    // open and full bitmaps drawn in the last frame, null before the first frame
+    private static long[] shownOpen;
+    private static long[] shownFull;
+    private static int shownN;
+    // scratch bitmaps for the frame being drawn
+    private static long[] nextOpen;
+    private static long[] nextFull;
+
+    // draw N-by-N percolation system; after the first frame only cells whose
+    // open or full state changed since the previous frame are redrawn
     public static void draw(Percolation perc, int N) {
-        StdDraw.clear();
-        StdDraw.setPenColor(StdDraw.BLACK);
-        StdDraw.setXscale(-.05*N, 1.05*N);
-        StdDraw.setYscale(-.05*N, 1.05*N);   // leave a border to write text
-        StdDraw.filledSquare(N/2.0, N/2.0, N/2.0);
+        nextOpen = perc.openSites(nextOpen);
+        nextFull = perc.fullSites(nextFull);
+        int words = (N*N + 63) >>> 6;
+
+        if (shownOpen == null || shownN != N) {
+            StdDraw.clear();
+            StdDraw.setPenColor(StdDraw.BLACK);
+            StdDraw.setXscale(-.05*N, 1.05*N);
+            StdDraw.setYscale(-.05*N, 1.05*N);   // leave a border to write text
+            StdDraw.filledSquare(N/2.0, N/2.0, N/2.0);
+            // blocked cells are already black, draw every other cell
+            shownOpen = new long[words];
+            shownFull = new long[words];
+            shownN = N;
+        }
 
-        // draw N-by-N grid
+        // draw N-by-N grid, only cells that differ from the last frame
         int opened = 0;
-        for (int row = 1; row <= N; row++) {
-            for (int col = 1; col <= N; col++) {
-                if (perc.isFull(row, col)) {
+        for (int w = 0; w < words; w++) {
+            opened += Long.bitCount(nextOpen[w]);
+            long changed = (nextOpen[w] ^ shownOpen[w]) | (nextFull[w] ^ shownFull[w]);
+            while (changed != 0) {
+                int bit = Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                int site = (w << 6) + bit;
+                int row = site / N + 1;
+                int col = site % N + 1;
+                if ((nextFull[w] & (1L << bit)) != 0)
                     StdDraw.setPenColor(StdDraw.BOOK_LIGHT_BLUE);
-                    opened++;
-                }
-                else if (perc.isOpen(row, col)) {
+                else if ((nextOpen[w] & (1L << bit)) != 0)
                     StdDraw.setPenColor(StdDraw.WHITE);
-                    opened++;
-                }
                 else
                     StdDraw.setPenColor(StdDraw.BLACK);
                 StdDraw.filledSquare(col - 0.5, N - row + 0.5, 0.45);
             }
         }
+        long[] t = shownOpen;
+        shownOpen = nextOpen;
+        nextOpen = t;
+        t = shownFull;
+        shownFull = nextFull;
+        nextFull = t;
 
-        // write status text
+        // write status text over the previous one
+        StdDraw.setPenColor(StdDraw.WHITE);
+        StdDraw.filledRectangle(N/2.0, -N*.025, .55*N, .025*N);
         StdDraw.setFont(new Font("SansSerif", Font.PLAIN, 12));
         StdDraw.setPenColor(StdDraw.BLACK);
         StdDraw.text(.25*N, -N*.025, opened + " open sites");
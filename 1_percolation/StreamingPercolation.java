@@ -0,0 +1,176 @@
+/******************************************************************************
+ *  Compilation:  javac-algs4 StreamingPercolation.java
+ *  Execution:    java-algs4  StreamingPercolation N p seed
+ *  Dependencies: algs4.StdOut
+ *
+ *  Decides whether an N-by-N grid percolates while seeing it one row at a
+ *  time, top to bottom, using Hoshen-Kopelman cluster labelling. Only the
+ *  labels of the previous and the current row are kept, together with a
+ *  label-equivalence table that is rebuilt for every row, so memory is
+ *  proportional to N rather than N^2.
+ *
+ *  Example: java-algs4 StreamingPercolation 1000000 0.6 42
+ *  Written by Ramin Halviatti
+ ******************************************************************************/
+
+import java.util.SplittableRandom;
+import edu.princeton.cs.algs4.StdOut;
+
+/**
+ *  The <tt>StreamingPercolation</tt> class answers <em>percolates()</em> for a
+ *  grid that is supplied row by row through <em>addRow()</em>.
+ *  <p>
+ *  Every open site of the previous row carries a compact label in [0, m),
+ *  where m is at most N, and each label remembers whether its cluster reaches
+ *  the top row. A new row gets provisional labels in [N, 2N); the left and
+ *  upper neighbors are merged in a small union-find over [0, 2N), and the
+ *  surviving roots are renumbered into [0, m) before the next row. Once no
+ *  label of a row reaches the top row, no later row can, and the remaining
+ *  rows are only counted.
+ *  <p>
+ *  <em>addRow</em> takes time proportional to N (times the inverse Ackermann
+ *  function) and the data type uses about 35N bytes in total.
+ *
+ *  @author Ramin Halviatti
+ */
+public class StreamingPercolation {
+    private static final int BLOCKED = -1;
+
+    private final int sizeN;
+    private int[] prevLabel;      // compact label of each site in the last row, or BLOCKED
+    private int[] curLabel;       // labels of the row being added
+    private int[] parent;         // union-find over [0, 2N): previous labels, then provisional ones
+    private boolean[] topFlag;    // topFlag[r] = cluster with root r reaches the top row
+    private int[] mapStamp;       // mapStamp[r] == rows when root r has been renumbered this row
+    private int[] mapLabel;       // mapLabel[r] = compact label given to root r
+    private boolean[] nextTop;    // top flags of the renumbered labels
+    private int rows;             // number of rows added so far
+    private boolean connected;    // does some site in the last row reach the top row?
+
+    public StreamingPercolation(int N) {
+        if (N <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "Percolation size cannot be a negative number.");
+        sizeN = N;
+        prevLabel = new int[N];
+        curLabel = new int[N];
+        parent = new int[2*N];
+        topFlag = new boolean[2*N];
+        mapStamp = new int[2*N];
+        mapLabel = new int[2*N];
+        nextTop = new boolean[N];
+        java.util.Arrays.fill(prevLabel, BLOCKED);
+        connected = true;
+    }
+
+    // add the next row of the grid; open[c] is true if column c is open
+    public void addRow(boolean[] open) {
+        if (open == null)
+            throw new java.lang.NullPointerException("Row cannot be null.");
+        if (open.length != sizeN)
+            throw new java.lang.IllegalArgumentException(
+                "Row length must be " + sizeN + ".");
+        if (rows == sizeN)
+            throw new java.lang.IllegalStateException("All rows have been added.");
+        rows++;
+        // once no site reaches the top row, no later row can either
+        if (!connected)
+            return;
+
+        // provisional labels, merged with the left and upper neighbors
+        for (int c = 0; c < sizeN; c++) {
+            if (!open[c]) {
+                curLabel[c] = BLOCKED;
+                continue;
+            }
+            int id = sizeN + c;
+            parent[id] = id;
+            topFlag[id] = (rows == 1);
+            curLabel[c] = id;
+            if (c > 0 && open[c-1])
+                union(id, id - 1);
+            if (prevLabel[c] != BLOCKED)
+                union(id, prevLabel[c]);
+        }
+
+        // renumber surviving roots into [0, m); clusters that do not reach the top
+        // yet are kept, since a later row may still join them to one that does
+        int m = 0;
+        connected = false;
+        for (int c = 0; c < sizeN; c++) {
+            if (curLabel[c] == BLOCKED)
+                continue;
+            int root = find(curLabel[c]);
+            if (mapStamp[root] != rows) {
+                mapStamp[root] = rows;
+                mapLabel[root] = m;
+                nextTop[m] = topFlag[root];
+                connected |= topFlag[root];
+                m++;
+            }
+            curLabel[c] = mapLabel[root];
+        }
+        for (int label = 0; label < m; label++) {
+            parent[label] = label;
+            topFlag[label] = nextTop[label];
+        }
+
+        int[] t = prevLabel;
+        prevLabel = curLabel;
+        curLabel = t;
+    }
+
+    // number of rows added so far
+    public int rows() {
+        return rows;
+    }
+
+    // does the grid percolate? all N rows must have been added
+    public boolean percolates() {
+        if (rows != sizeN)
+            throw new java.lang.IllegalStateException(
+                "Only " + rows + " of " + sizeN + " rows have been added.");
+        return connected;
+    }
+
+    private int find(int p) {
+        while (p != parent[p]) {
+            parent[p] = parent[parent[p]];
+            p = parent[p];
+        }
+        return p;
+    }
+
+    private void union(int p, int q) {
+        int rootP = find(p);
+        int rootQ = find(q);
+        if (rootP == rootQ)
+            return;
+        parent[rootP] = rootQ;
+        topFlag[rootQ] |= topFlag[rootP];
+    }
+
+    // generate an N-by-N grid, each site open with probability p, and test it
+    public static boolean percolates(int N, double p, SplittableRandom random) {
+        StreamingPercolation perc = new StreamingPercolation(N);
+        boolean[] row = new boolean[N];
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++)
+                row[c] = random.nextDouble() < p;
+            perc.addRow(row);
+        }
+        return perc.percolates();
+    }
+
+    public static void main(String[] args) {
+        int N = Integer.parseInt(args[0]);
+        double p = Double.parseDouble(args[1]);
+        long seed = Long.parseLong(args[2]);
+        long start = System.currentTimeMillis();
+        boolean result = percolates(N, p, new SplittableRandom(seed));
+        long elapsed = System.currentTimeMillis() - start;
+        StdOut.println(N + "-by-" + N + " grid at p = " + p
+                       + (result ? " percolates" : " does not percolate")
+                       + " (" + elapsed + " ms)");
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * A RandomizedQueue that many threads can share.
+ *
+ * The items are spread over a fixed number of stripes, each a resizing array
+ * with its own lock, and every thread draws from its own SplittableRandom
+ * instead of the global StdRandom, so threads working on different stripes
+ * never wait for each other.
+ *
+ * enqueue() adds to a random stripe, moving on to the next one when the lock
+ * is taken. dequeue() and sample() use rejection sampling: they pick a
+ * stripe uniformly and an index below a shared bound on the stripe sizes,
+ * and retry unless the index holds an item, so every item is equally likely
+ * and an attempt reads one stripe's size instead of all of them. The bound
+ * is a power of two, raised by enqueue() and lowered after a run of misses.
+ * Stripe sizes and the bound are read without locking, so under concurrent
+ * updates the choice is uniform over a recent state of the queue rather
+ * than an exact one. An empty queue is only reported after a check with
+ * every stripe locked. Each stripe is padded so that the size counters of
+ * neighbouring stripes do not share a cache line.
+ *
+ * Execution: java-algs4 ConcurrentRandomizedQueue maxThreads itemsPerThread
+ */
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import edu.princeton.cs.algs4.StdOut;
+
+public class ConcurrentRandomizedQueue<Item> implements Iterable<Item> {
+    private final Stripe<Item>[] stripes;
+    private final ThreadLocal<SplittableRandom> random;
+    // a power of two at least as large as every stripe's size, give or take
+    // the updates in flight
+    private final AtomicInteger bound = new AtomicInteger(1);
+
+    // one resizing array of items and the lock that guards it
+    private static class Stripe<Item> {
+        // the JVM lays out longs before the other fields, so these 56 bytes
+        // sit between N and the previous stripe's fields in the heap
+        private long p1, p2, p3, p4, p5, p6, p7;
+        private final ReentrantLock lock = new ReentrantLock();
+        private Item[] items = (Item[]) new Object[10];
+        private volatile int N;      // written under lock, read without it
+
+        // add the item and return the new size, the caller holds lock
+        public int add(Item item) {
+            if (N == items.length)
+                items = java.util.Arrays.copyOf(items, 2*items.length);
+            items[N] = item;
+            return ++N;
+        }
+        // remove and return the item at index i, the caller holds lock
+        public Item remove(int i) {
+            Item item = items[i];
+            items[i] = items[N-1];
+            // avoid loitering
+            items[N-1] = null;
+            N--;
+            if (N > 0 && N == items.length/4)
+                items = java.util.Arrays.copyOf(items, items.length/2);
+            return item;
+        }
+    }
+
+    // construct an empty queue with two stripes per available processor
+    public ConcurrentRandomizedQueue() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+    // construct an empty queue with the given number of stripes
+    public ConcurrentRandomizedQueue(int stripeCount) {
+        if (stripeCount <= 0)
+            throw new java.lang.IllegalArgumentException(
+                "Number of stripes must be positive.");
+        stripes = (Stripe<Item>[]) new Stripe<?>[stripeCount];
+        for (int s = 0; s < stripeCount; s++)
+            stripes[s] = new Stripe<Item>();
+        final SplittableRandom seeds = new SplittableRandom();
+        random = new ThreadLocal<SplittableRandom>() {
+            protected SplittableRandom initialValue() {
+                // split() is not thread-safe, so the seeding stream is locked
+                synchronized (seeds) {
+                    return seeds.split();
+                }
+            }
+        };
+    }
+    // is the queue empty? (a snapshot when other threads are changing it)
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    // return the number of items on the queue (a snapshot when other threads are changing it)
+    public int size() {
+        int total = 0;
+        for (Stripe<Item> stripe : stripes)
+            total += stripe.N;
+        return total;
+    }
+    // add the item
+    public void enqueue(Item item) {
+        if (item == null)
+            throw new java.lang.NullPointerException("Cannot add a null item!");
+        int n = insert(item);
+        // a shared write only when the largest stripe passes a power of two
+        while (true) {
+            int b = bound.get();
+            if (b >= n || bound.compareAndSet(b, ceilingPowerOfTwo(n)))
+                return;
+        }
+    }
+    // add the item to the first free stripe from a random start, waiting only
+    // if all are busy; returns the size of that stripe
+    private int insert(Item item) {
+        int start = random.get().nextInt(stripes.length);
+        for (int k = 0; k < stripes.length; k++) {
+            Stripe<Item> stripe = stripes[(start + k) % stripes.length];
+            if (stripe.lock.tryLock()) {
+                try {
+                    return stripe.add(item);
+                }
+                finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+        Stripe<Item> stripe = stripes[start];
+        stripe.lock.lock();
+        try {
+            return stripe.add(item);
+        }
+        finally {
+            stripe.lock.unlock();
+        }
+    }
+    // remove and return a random item
+    public Item dequeue() {
+        return take(true);
+    }
+    // return (but do not remove) a random item
+    public Item sample() {
+        return take(false);
+    }
+    // pick a stripe uniformly and an index below the bound, and retry unless
+    // the index holds an item; each attempt reads a single stripe's size
+    private Item take(boolean remove) {
+        SplittableRandom r = random.get();
+        int misses = 0;
+        while (true) {
+            Stripe<Item> stripe = stripes[r.nextInt(stripes.length)];
+            int i = r.nextInt(bound.get());
+            if (i < stripe.N) {
+                stripe.lock.lock();
+                try {
+                    // the stripe may have shrunk since its size was read
+                    if (i < stripe.N)
+                        return remove ? stripe.remove(i) : stripe.items[i];
+                }
+                finally {
+                    stripe.lock.unlock();
+                }
+            }
+            // after a run of misses the bound is likely stale, or the queue
+            // empty; an attempt succeeds with probability at least
+            // size / (2 * stripes * largest stripe), so this is rare unless
+            // the items sit in a few stripes
+            if (++misses == 2 * stripes.length) {
+                misses = 0;
+                int largest = 0;
+                for (Stripe<Item> t : stripes)
+                    largest = Math.max(largest, t.N);
+                if (largest == 0) {
+                    // the unlocked reads can miss an item moving between
+                    // stripes, so only a check under every lock may report
+                    // an empty queue
+                    if (isEmptyLocked())
+                        throw new java.util.NoSuchElementException(
+                            "Queue is empty!");
+                    continue;
+                }
+                // a stripe that grows past the lowered bound raises it again
+                int b = bound.get();
+                if (ceilingPowerOfTwo(largest) < b)
+                    bound.compareAndSet(b, ceilingPowerOfTwo(largest));
+            }
+        }
+    }
+    // the smallest power of two that is at least n, for n >= 1
+    private static int ceilingPowerOfTwo(int n) {
+        return n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+    // is every stripe empty at one moment? locks all stripes in index order,
+    // which cannot deadlock since no other method holds two stripe locks
+    private boolean isEmptyLocked() {
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++)
+                stripes[locked].lock.lock();
+            for (Stripe<Item> stripe : stripes)
+                if (stripe.N > 0)
+                    return false;
+            return true;
+        }
+        finally {
+            while (locked > 0)
+                stripes[--locked].lock.unlock();
+        }
+    }
+    // return an iterator over a snapshot of the items in random order; each
+    // stripe is copied under its lock, the stripes are not locked together
+    public Iterator<Item> iterator() {
+        int total = 0;
+        Object[][] copies = new Object[stripes.length][];
+        for (int s = 0; s < stripes.length; s++) {
+            Stripe<Item> stripe = stripes[s];
+            stripe.lock.lock();
+            try {
+                copies[s] = java.util.Arrays.copyOf(stripe.items, stripe.N);
+            }
+            finally {
+                stripe.lock.unlock();
+            }
+            total += copies[s].length;
+        }
+        Item[] snapshot = (Item[]) new Object[total];
+        int n = 0;
+        for (Object[] copy : copies) {
+            System.arraycopy(copy, 0, snapshot, n, copy.length);
+            n += copy.length;
+        }
+        return new SnapshotIterator(snapshot, random.get().split());
+    }
+
+    // shuffles the snapshot one step per next()
+    private class SnapshotIterator implements Iterator<Item> {
+        private final Item[] items;
+        private final SplittableRandom r;
+        private int current;
+
+        public SnapshotIterator(Item[] items, SplittableRandom r) {
+            this.items = items;
+            this.r = r;
+        }
+        public boolean hasNext() {
+            return current != items.length;
+        }
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException(
+                "Iterator remove is not supported!");
+        }
+        public Item next() {
+            if (current == items.length)
+                throw new java.util.NoSuchElementException(
+                    "There is no next item!");
+            int rand = current + r.nextInt(items.length - current);
+            Item item = items[rand];
+            items[rand] = items[current];
+            items[current++] = item;
+            return item;
+        }
+    }
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+    // checks that every item comes out once, that sampling is uniform and that
+    // a busy queue is never reported empty, then times the same work on this
+    // queue and on a RandomizedQueue guarded by a single lock for 1, 2, 4, ...
+    // threads up to maxThreads
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = Integer.parseInt(args[0]);
+        int perThread = Integer.parseInt(args[1]);
+
+        final ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<Integer>();
+        long sum = runStriped(queue, maxThreads, perThread);
+        long n = (long) maxThreads * perThread;
+        verify(queue.isEmpty(), "queue is empty after as many dequeues as enqueues");
+        verify(sum == n * (n - 1) / 2, "every item was dequeued exactly once");
+
+        // a few items over many stripes, so most attempts are misses
+        ConcurrentRandomizedQueue<Integer> few = new ConcurrentRandomizedQueue<Integer>(16);
+        int[] counts = new int[8];
+        for (int i = 0; i < counts.length; i++)
+            few.enqueue(i);
+        int samples = 400000;
+        for (int k = 0; k < samples; k++)
+            counts[few.sample()]++;
+        boolean uniform = true;
+        for (int count : counts)
+            uniform &= Math.abs(count - samples / counts.length) < samples / counts.length / 20;
+        verify(uniform, "sample() picks every item about equally often");
+
+        // two items that one thread keeps moving between stripes: the queue
+        // is never empty, though an unlocked sum of the stripes can be 0
+        final ConcurrentRandomizedQueue<Integer> moving = new ConcurrentRandomizedQueue<Integer>(16);
+        moving.enqueue(1);
+        moving.enqueue(2);
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread mover = new Thread(new Runnable() {
+            public void run() {
+                while (!done.get())
+                    moving.enqueue(moving.dequeue());
+            }
+        });
+        mover.start();
+        boolean neverEmpty = true;
+        try {
+            for (int i = 0; i < 1000000; i++)
+                moving.sample();
+        }
+        catch (java.util.NoSuchElementException e) {
+            neverEmpty = false;
+        }
+        done.set(true);
+        mover.join();
+        verify(neverEmpty, "sample() never reports a queue that is not empty as empty");
+
+        StdOut.printf("%d processors%n", Runtime.getRuntime().availableProcessors());
+        StdOut.printf("threads\t striped ops/s\t single lock ops/s%n");
+        for (int threads = 1; ; threads = Math.min(2 * threads, maxThreads)) {
+            long ops = 2L * threads * perThread;
+            long start = System.nanoTime();
+            runStriped(new ConcurrentRandomizedQueue<Integer>(), threads, perThread);
+            double striped = (System.nanoTime() - start) / 1e9;
+            start = System.nanoTime();
+            runLocked(new RandomizedQueue<Integer>(), threads, perThread);
+            double single = (System.nanoTime() - start) / 1e9;
+            StdOut.printf("%7d\t %13.0f\t %17.0f%n", threads, ops / striped, ops / single);
+            if (threads == maxThreads)
+                break;
+        }
+    }
+
+    // every thread enqueues its own items and then dequeues as many; returns
+    // the sum of the dequeued items
+    private static long runStriped(final ConcurrentRandomizedQueue<Integer> queue,
+                                   int threads, final int perThread)
+            throws InterruptedException {
+        final AtomicLong sum = new AtomicLong();
+        runThreads(threads, new Worker() {
+            public void run(int t) {
+                for (int i = 0; i < perThread; i++)
+                    queue.enqueue(t * perThread + i);
+                long local = 0;
+                for (int i = 0; i < perThread; i++)
+                    local += queue.dequeue();
+                sum.addAndGet(local);
+            }
+        });
+        return sum.get();
+    }
+
+    // the same work on a RandomizedQueue behind a single lock
+    private static void runLocked(final RandomizedQueue<Integer> locked,
+                                  int threads, final int perThread)
+            throws InterruptedException {
+        runThreads(threads, new Worker() {
+            public void run(int t) {
+                for (int i = 0; i < perThread; i++)
+                    synchronized (locked) {
+                        locked.enqueue(t * perThread + i);
+                    }
+                for (int i = 0; i < perThread; i++)
+                    synchronized (locked) {
+                        locked.dequeue();
+                    }
+            }
+        });
+    }
+
+    private interface Worker {
+        void run(int thread);
+    }
+
+    private static void runThreads(int threads, final Worker worker)
+            throws InterruptedException {
+        Thread[] running = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            running[t] = new Thread(new Runnable() {
+                public void run() {
+                    worker.run(id);
+                }
+            });
+            running[t].start();
+        }
+        for (Thread thread : running)
+            thread.join();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * RingBufferDeque specialized to int values.
+ *
+ * Values are stored in an int[] circular buffer of power-of-two capacity, so
+ * nothing is boxed on add, remove or iteration and a deque of N values takes
+ * between 4N and 16N bytes, against about 56N bytes for Deque<Integer>
+ * (a 40-byte node plus a 16-byte Integer per item).
+ */
+import java.util.PrimitiveIterator;
+import edu.princeton.cs.algs4.StdOut;
+
+public class IntDeque implements Iterable<Integer> {
+    private static final int MIN_CAPACITY = 8;   // must be a power of two
+
+    private int[] items;         // circular buffer, length is a power of two
+    private int head;            // index of the front value
+    private int N;               // number of elements
+
+    // construct an empty deque
+    public IntDeque() {
+        items = new int[MIN_CAPACITY];
+        head = 0;
+        N = 0;
+    }
+    // is the deque empty?
+    public boolean isEmpty() {
+        return (N == 0);
+    }
+    // return the number of values on the deque
+    public int size() {
+        return N;
+    }
+    // add the value to the front
+    public void addFirst(int item) {
+        if (N == items.length)
+            resize(2*items.length);
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
+        N++;
+    }
+    // add the value to the end
+    public void addLast(int item) {
+        if (N == items.length)
+            resize(2*items.length);
+        items[(head + N) & (items.length - 1)] = item;
+        N++;
+    }
+    // remove and return the value from the front
+    public int removeFirst() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Cannot remove from empty deque!");
+        int item = items[head];
+        head = (head + 1) & (items.length - 1);
+        N--;
+        shrinkIfSparse();
+        return item;
+    }
+    // remove and return the value from the end
+    public int removeLast() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Cannot remove from empty deque!");
+        int item = items[(head + N - 1) & (items.length - 1)];
+        N--;
+        shrinkIfSparse();
+        return item;
+    }
+    // halve the buffer when it is a quarter full
+    private void shrinkIfSparse() {
+        if (items.length > MIN_CAPACITY && N == items.length/4)
+            resize(items.length/2);
+    }
+    // move the values to a buffer of the given power-of-two capacity, front at index 0
+    private void resize(int capacity) {
+        if (capacity < 0)
+            throw new java.lang.IllegalStateException("Deque is too large!");
+        int[] temp = new int[capacity];
+        int firstRun = Math.min(N, items.length - head);
+        System.arraycopy(items, head, temp, 0, firstRun);
+        System.arraycopy(items, 0, temp, firstRun, N - firstRun);
+        items = temp;
+        head = 0;
+    }
+    // return an iterator over values in order from front to end; use nextInt()
+    // to read them without boxing
+    public PrimitiveIterator.OfInt iterator() {
+        return new IntDequeIterator();
+    }
+
+    private class IntDequeIterator implements PrimitiveIterator.OfInt {
+        private int current = 0;     // position of the next value, counted from the front
+
+        public boolean hasNext() {
+            return current < N;
+        }
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException(
+                "Iterator remove is not supported!");
+        }
+        public int nextInt() {
+            if (current >= N)
+                throw new java.util.NoSuchElementException(
+                    "There is no next item!");
+            return items[(head + current++) & (items.length - 1)];
+        }
+    }
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+    // unit testing
+    public static void main(String[] args) {
+        IntDeque deque = new IntDeque();
+
+        deque.addLast(1000);
+        verify((deque.removeFirst() == 1000), "addLast() followed by removeFirst()");
+        deque.addFirst(1);
+        verify((deque.removeLast() == 1),     "addFirst() followed by removeLast()");
+        verify(deque.isEmpty(),               "deque should be empty");
+
+        for (int i = 0; i < 100; i++)
+            deque.addLast(i);
+        for (int i = -1; i >= -100; i--)
+            deque.addFirst(i);
+        int expected = -100;
+        boolean inOrder = true;
+        PrimitiveIterator.OfInt iterator = deque.iterator();
+        while (iterator.hasNext())
+            inOrder &= (iterator.nextInt() == expected++);
+        verify(inOrder && expected == 100, "Iterator walks front to end");
+
+        boolean removedInOrder = true;
+        for (int i = 99; i >= 0; i--)
+            removedInOrder &= (deque.removeLast() == i);
+        for (int i = -100; i < 0; i++)
+            removedInOrder &= (deque.removeFirst() == i);
+        verify(removedInOrder && deque.isEmpty(), "Values come back in order");
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * RandomizedQueue specialized to int values.
+ *
+ * Values are stored in a resizing int[], so enqueue, dequeue, sample and
+ * iteration never box and a queue of N values takes between 4N and 16N
+ * bytes, against 20N to 32N bytes (references plus 16-byte Integers) for
+ * RandomizedQueue<Integer>. Iterators shuffle lazily like RandomizedQueue's,
+ * recording only the positions they have swapped, so creating one is
+ * constant time and copies nothing.
+ */
+import java.util.PrimitiveIterator;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+public class IntRandomizedQueue implements Iterable<Integer> {
+    private int[] queue;         // queue elements
+    private int N = 0;           // number of elements on queue
+    private int modCount = 0;    // structural changes, lets iterators fail fast
+
+    // construct an empty randomized queue
+    public IntRandomizedQueue() {
+        final int SIZE = 10; // Initial size of array
+        queue = new int[SIZE];
+    }
+    // is the queue empty?
+    public boolean isEmpty() {
+        return N == 0;
+    }
+    // return the number of values on the queue
+    public int size() {
+        return N;
+    }
+    // resize the underlying array
+    private void resize(int capacity) {
+        assert capacity >= N;
+        queue = java.util.Arrays.copyOf(queue, capacity);
+    }
+    // add the value
+    public void enqueue(int item) {
+        // double size of array if necessary
+        if (N == queue.length)
+            resize(2*queue.length);
+        queue[N++] = item;
+        modCount++;
+    }
+    // remove and return a random value
+    public int dequeue() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Queue is empty!");
+        // Pick a random value and move the last one into its place
+        int rand = StdRandom.uniform(N);
+        int item = queue[rand];
+        queue[rand] = queue[N-1];
+        N--;
+        modCount++;
+        // shrink size of array if necessary
+        if (N > 0 && N == queue.length/4)
+            resize(queue.length/2);
+        return item;
+    }
+    // return (but do not remove) a random value
+    public int sample() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Queue is empty!");
+        return queue[StdRandom.uniform(N)];
+    }
+    // return an independent iterator over values in random order; use nextInt()
+    // to read them without boxing
+    public PrimitiveIterator.OfInt iterator() {
+        return new RandomQueueIterator();
+    }
+
+    private class RandomQueueIterator implements PrimitiveIterator.OfInt {
+        private final int size;             // values on the queue at construction
+        private final int expectedModCount;
+        private final RandomizedQueue.IntIntMap moved;  // moved.get(i, i) = index now at position i
+        private int current;                // positions [0, current) were returned
+
+        public RandomQueueIterator() {
+            size = N;
+            expectedModCount = modCount;
+            moved = new RandomizedQueue.IntIntMap();
+            current = 0;
+        }
+        public boolean hasNext() {
+            return current != size;
+        }
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException(
+                "Iterator remove is not supported!");
+        }
+        public int nextInt() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException(
+                    "Queue changed during iteration!");
+            if (current == size)
+                throw new java.util.NoSuchElementException(
+                    "There is no next item!");
+            int rand = current + StdRandom.uniform(size - current);
+            int index = moved.get(rand, rand);
+            // position current is consumed, only rand must remember what moved there
+            if (rand != current)
+                moved.put(rand, moved.get(current, current));
+            current++;
+            return queue[index];
+        }
+    }
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+    // unit testing
+    public static void main(String[] args) {
+        IntRandomizedQueue randomq = new IntRandomizedQueue();
+        for (int i = 0; i < 20; i++)
+            randomq.enqueue(i);
+        boolean[] seen = new boolean[20];
+        PrimitiveIterator.OfInt it = randomq.iterator();
+        while (it.hasNext())
+            seen[it.nextInt()] = true;
+        boolean all = true;
+        for (boolean b : seen)
+            all &= b;
+        verify(all,                       "Iterator returns every value");
+        verify((randomq.size() == 20),    "Size is 20");
+        int sum = 0;
+        for (int i = 0; i < 20; i++)
+            sum += randomq.dequeue();
+        verify((sum == 190),              "dequeue() returns every value once");
+        verify(randomq.isEmpty(),         "randomq should be empty");
+        verify(!randomq.iterator().hasNext(), "Iterator with empty queue");
+
+        randomq.enqueue(1);
+        verify((randomq.sample() == 1),   "Sample is 1");
+        verify((randomq.dequeue() == 1),  "Item is 1");
+        verify(randomq.isEmpty(),         "randomq should be empty");
+
+        // the iterator reads the live array, so it fails fast on changes
+        for (int i = 0; i < 20; i++)
+            randomq.enqueue(i);
+        it = randomq.iterator();
+        it.nextInt();
+        randomq.dequeue();
+        boolean failedFast = false;
+        try {
+            it.nextInt();
+        }
+        catch (java.util.ConcurrentModificationException e) {
+            failedFast = true;
+        }
+        verify(failedFast,                "Iterator fails fast after dequeue()");
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Stream support for Deque and RandomizedQueue.
+ *
+ * Deque and RandomizedQueue are assignment submissions, which may only use
+ * StdIn, StdOut, StdRandom, java.lang, java.util.Iterator and
+ * java.util.NoSuchElementException, so their spliterators live here, the
+ * way RingBufferDeque keeps its own spliterator next to its buffer.
+ *
+ * spliterator(RandomizedQueue) splits in constant time: positions 0..N-1
+ * are mapped to array indices by a random permutation computed on the fly,
+ * so halving the position range gives each part a disjoint random share of
+ * the items with no shared state.
+ *
+ * spliterator(Deque) cannot: a linked list has no index to split at, so
+ * the parts are batches of items copied into arrays as the list is walked.
+ * Each split costs time proportional to its batch. When parallel streams
+ * matter, use RingBufferDeque, which splits its index range in constant time.
+ *
+ * Execution: java-algs4 QueueStreams
+ */
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+public class QueueStreams {
+    private QueueStreams() {
+    }
+
+    // return a spliterator over the items of the deque from front to end,
+    // split off in batches
+    public static <Item> Spliterator<Item> spliterator(Deque<Item> deque) {
+        return Spliterators.spliterator(deque.iterator(), deque.size(),
+            Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+    // return a sequential stream of the items of the deque, call parallel() to split it
+    public static <Item> Stream<Item> stream(Deque<Item> deque) {
+        return StreamSupport.stream(spliterator(deque), false);
+    }
+    // return a spliterator over the items of the queue in random order that
+    // splits in constant time; like the iterator it fails fast if the queue
+    // changes
+    public static <Item> Spliterator<Item> spliterator(RandomizedQueue<Item> queue) {
+        int n = queue.size();
+        return new RandomQueueSpliterator<Item>(queue,
+            new RandomPermutation(n, StdRandom.uniform(1 << 30)), 0, n, queue.modCount());
+    }
+    // return a sequential stream of the items of the queue in random order,
+    // call parallel() to split it
+    public static <Item> Stream<Item> stream(RandomizedQueue<Item> queue) {
+        return StreamSupport.stream(spliterator(queue), false);
+    }
+
+    private static class RandomQueueSpliterator<Item> implements Spliterator<Item> {
+        private final RandomizedQueue<Item> queue;
+        private final RandomPermutation order;
+        private int lo;                     // positions [lo, hi) of order are left
+        private final int hi;
+        private final int expectedModCount;
+
+        public RandomQueueSpliterator(RandomizedQueue<Item> queue, RandomPermutation order,
+                                      int lo, int hi, int expectedModCount) {
+            this.queue = queue;
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+            this.expectedModCount = expectedModCount;
+        }
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            if (action == null)
+                throw new java.lang.NullPointerException("Action is null!");
+            if (lo >= hi)
+                return false;
+            checkForComodification();
+            action.accept(queue.itemAt(order.get(lo++)));
+            return true;
+        }
+        public void forEachRemaining(Consumer<? super Item> action) {
+            if (action == null)
+                throw new java.lang.NullPointerException("Action is null!");
+            for (int i = lo; i < hi; i++)
+                action.accept(queue.itemAt(order.get(i)));
+            lo = hi;
+            checkForComodification();
+        }
+        public Spliterator<Item> trySplit() {
+            int mid = (lo + hi) >>> 1;
+            if (mid <= lo)
+                return null;
+            Spliterator<Item> prefix = new RandomQueueSpliterator<Item>(queue, order, lo, mid,
+                                                                        expectedModCount);
+            lo = mid;
+            return prefix;
+        }
+        public long estimateSize() {
+            return hi - lo;
+        }
+        public int characteristics() {
+            return SIZED | SUBSIZED | NONNULL;
+        }
+        private void checkForComodification() {
+            if (queue.modCount() != expectedModCount)
+                throw new java.util.ConcurrentModificationException(
+                    "Queue changed during iteration!");
+        }
+    }
+
+    // A random permutation of 0..n-1 that is evaluated per position instead of
+    // stored: a four-round Feistel network on the smallest even number of bits
+    // covering n is a random-looking bijection on [0, 2^bits), and applying it
+    // again to values >= n ("cycle walking") restricts it to [0, n). Since
+    // 2^bits < 4n, a value takes fewer than four applications on average.
+    private static class RandomPermutation {
+        private final int n;
+        private final int halfBits;
+        private final int halfMask;
+        private final int[] keys = new int[4];
+
+        public RandomPermutation(int n, long seed) {
+            this.n = n;
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(n - 1, 1));
+            halfBits = (bits + 1) / 2;
+            halfMask = (1 << halfBits) - 1;
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int r = 0; r < keys.length; r++)
+                keys[r] = random.nextInt();
+        }
+        // the index at position i
+        public int get(int i) {
+            int x = i;
+            do {
+                x = encrypt(x);
+            } while (x < 0 || x >= n);   // for large n the domain reaches 2^32
+            return x;
+        }
+        private int encrypt(int x) {
+            int left = x >>> halfBits;
+            int right = x & halfMask;
+            for (int key : keys) {
+                int h = (right ^ key) * 0x9E3779B9;
+                int next = left ^ ((h ^ (h >>> 15)) & halfMask);
+                left = right;
+                right = next;
+            }
+            return (left << halfBits) | right;
+        }
+    }
+
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+    // unit testing
+    public static void main(String[] args) {
+        Deque<Integer> deque = new Deque<Integer>();
+        for (int i = 0; i < 10000; i++)
+            deque.addLast(i);
+        verify((stream(deque).parallel().mapToLong(Integer::longValue).sum() == 49995000L),
+               "Parallel stream sums every item of a Deque");
+        Object[] inOrder = stream(deque).parallel().toArray();
+        boolean ordered = inOrder.length == 10000;
+        for (int i = 0; i < inOrder.length; i++)
+            ordered &= inOrder[i].equals(i);
+        verify(ordered, "Deque stream keeps front-to-end order");
+
+        // a random permutation split by position range
+        RandomizedQueue<Integer> randomq = new RandomizedQueue<Integer>();
+        for (int i = 1; i <= 1000; i++)
+            randomq.enqueue(i);
+        verify((stream(randomq).parallel().mapToLong(Integer::longValue).sum() == 500500L
+                && stream(randomq).parallel().distinct().count() == randomq.size()),
+               "Parallel stream visits every item of a RandomizedQueue once");
+        Spliterator<Integer> split = spliterator(randomq);
+        Spliterator<Integer> prefix = split.trySplit();
+        verify((prefix.estimateSize() == 500 && split.estimateSize() == 500),
+               "RandomizedQueue spliterator halves its range");
+        randomq.enqueue(1001);
+        boolean failedFast = false;
+        try {
+            split.tryAdvance(new Consumer<Integer>() {
+                public void accept(Integer i) {
+                }
+            });
+        }
+        catch (java.util.ConcurrentModificationException e) {
+            failedFast = true;
+        }
+        verify(failedFast, "RandomizedQueue spliterator fails fast after enqueue()");
+    }
+}
@@ -11,12 +11,13 @@ import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.StdRandom;
 
 public class RandomizedQueue<Item> implements Iterable<Item> {
+    private static final int SIZE = 10; // Initial size of array
     private Item[] queue;        // queue elements
     private int N = 0;           // number of elements on queue
+    private int modCount = 0;    // structural changes, lets iterators fail fast
 
     // construct an empty randomized queue
     public RandomizedQueue() {
-        final int SIZE = 10; // Initial size of array 
         // cast needed since no generic array creation in Java
         queue = (Item[]) new Object[SIZE];
     }   
@@ -28,6 +29,10 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     public int size() {
         return N;
     }   
+    // length of the underlying array
+    private int capacity() {
+        return queue.length;
+    }
     // resize the underlying array
     private void resize(int capacity) {
         assert capacity >= N;
@@ -49,6 +54,7 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         }
         // add item
         queue[N++] = item;                        
+        modCount++;
     }         
     // remove and return a random item
     public Item dequeue() {
@@ -64,6 +70,7 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         // Remove last element without loitering
         queue[N-1] = null; 
         N--;
+        modCount++;
         // shrink size of array if necessary
         if (N > 0 && N == queue.length/4) 
             resize(queue.length/2);
@@ -79,37 +86,163 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         Item item = queue[rand];
         return item;
     }
+    // remove and return k distinct random items
+    public Object[] dequeue(int k) {
+        return dequeue(k, (Item[]) new Object[k]);
+    }
+    // remove k distinct random items into dst[0..k), or into a new array of the
+    // same type if dst is too small, and return the array; the backing array is
+    // resized at most once
+    public Item[] dequeue(int k, Item[] dst) {
+        dst = prepare(k, dst);
+        shuffleTail(k);
+        System.arraycopy(queue, N-k, dst, 0, k);
+        // Remove the tail without loitering
+        java.util.Arrays.fill(queue, N-k, N, null);
+        N -= k;
+        modCount++;
+        // shrink size of array if necessary, in one step
+        int capacity = queue.length;
+        while (N > 0 && N <= capacity/4)
+            capacity /= 2;
+        // an emptied queue goes back to its initial size
+        if (N == 0)
+            capacity = Math.min(capacity, SIZE);
+        if (capacity != queue.length)
+            resize(capacity);
+        return dst;
+    }
+    // return (but do not remove) k distinct random items
+    public Object[] sample(int k) {
+        return sample(k, (Item[]) new Object[k]);
+    }
+    // copy k distinct random items into dst[0..k), or into a new array of the
+    // same type if dst is too small, and return the array. The items stay on
+    // the queue but are reordered, so open iterators fail fast afterwards.
+    public Item[] sample(int k, Item[] dst) {
+        dst = prepare(k, dst);
+        shuffleTail(k);
+        System.arraycopy(queue, N-k, dst, 0, k);
+        modCount++;
+        return dst;
+    }
+    // validate k and make sure dst can hold k items
+    private Item[] prepare(int k, Item[] dst) {
+        if (k < 0 || k > N)
+            throw new java.lang.IllegalArgumentException(
+                "Cannot take " + k + " items from a queue of " + N + "!");
+        if (dst == null)
+            throw new java.lang.NullPointerException("Destination array is null!");
+        if (dst.length < k)
+            dst = (Item[]) java.lang.reflect.Array.newInstance(
+                dst.getClass().getComponentType(), k);
+        return dst;
+    }
+    // partial Fisher-Yates: move k distinct random items to queue[N-k..N-1]
+    private void shuffleTail(int k) {
+        for (int last = N-1; last >= N-k; last--) {
+            int rand = StdRandom.uniform(last + 1);
+            Item item = queue[rand];
+            queue[rand] = queue[last];
+            queue[last] = item;
+        }
+    }
     // return an independent iterator over items in random order
     public Iterator<Item> iterator() {      
         return new RandomQueueIterator();
     }
     
+    // Fisher-Yates over the indices 0..N-1, one step per next(). Only indices
+    // that a swap moved are stored, in a sparse map, so construction is O(1),
+    // memory grows with the items consumed and the queue itself is not touched.
+    // Like the java.util collections it fails fast if the queue changes.
     private class RandomQueueIterator implements Iterator<Item> {
-        private int current;
-        private Item[] copyq;
+        private final int size;             // items on the queue at construction
+        private final int expectedModCount;
+        private final IntIntMap moved;      // moved.get(i, i) = index now at position i
+        private int current;                // positions [0, current) were returned
         
         public RandomQueueIterator() {
-            copyq = (Item[]) new Object[N];
+            size = N;
+            expectedModCount = modCount;
+            moved = new IntIntMap();
             current = 0;    
-            if (!isEmpty()) {
-                StdRandom.shuffle(queue, 0, N-1);
-                for (int i = 0; i < N; i++)
-                    copyq[i] = queue[i];
-            }
         }
         public boolean hasNext() { 
-            return current != copyq.length; 
+            return current != size; 
         }
         public void remove() {
             throw new java.lang.UnsupportedOperationException(
                 "Iterator remove is not supported!");
         }
         public Item next() {
-            if (current == copyq.length)
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException(
+                    "Queue changed during iteration!");
+            if (current == size)
                 throw new java.util.NoSuchElementException(
                     "There is no next item!");
-            
-            return copyq[current++];
+            int rand = current + StdRandom.uniform(size - current);
+            int index = moved.get(rand, rand);
+            // position current is consumed, only rand must remember what moved there
+            if (rand != current)
+                moved.put(rand, moved.get(current, current));
+            current++;
+            return queue[index];
+        }
+    }
+
+    // the item at index i of the array and the count of structural changes,
+    // for QueueStreams, which keeps stream support out of this file
+    Item itemAt(int i) {
+        return queue[i];
+    }
+    int modCount() {
+        return modCount;
+    }
+
+    // open-addressing map from int to int for non-negative keys, linear probing;
+    // IntRandomizedQueue and LongRandomizedQueue iterate with it too
+    static class IntIntMap {
+        private int[] keys = new int[16];   // keys[i] = key + 1, 0 for an empty slot
+        private int[] values = new int[16];
+        private int size;
+
+        public int get(int key, int missing) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask)
+                if (keys[i] == key + 1)
+                    return values[i];
+            return missing;
+        }
+        public void put(int key, int value) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != 0 && keys[i] != key + 1)
+                i = (i + 1) & mask;
+            if (keys[i] == 0) {
+                keys[i] = key + 1;
+                if (++size > keys.length/2) {
+                    values[i] = value;
+                    rehash();
+                    return;
+                }
+            }
+            values[i] = value;
+        }
+        private void rehash() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[2*oldKeys.length];
+            values = new int[2*oldValues.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldKeys[i] != 0)
+                    put(oldKeys[i] - 1, oldValues[i]);
+        }
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
         }
     }
     // verification helper
@@ -150,5 +283,51 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         item = randomq.dequeue();
         verify((item == 1),    "Item is 1");
         verify(randomq.isEmpty(),    "randomq should be empty");
+
+        // lazy iterator: every item exactly once, fail fast on changes
+        for (int i = 1; i <= 1000; i++)
+            randomq.enqueue(i);
+        boolean[] seen = new boolean[1001];
+        int count = 0;
+        for (int i : randomq) {
+            if (seen[i])
+                break;
+            seen[i] = true;
+            count++;
+        }
+        verify((count == 1000),    "Iterator returns each of 1000 items once");
+        iterator = randomq.iterator();
+        iterator.next();
+        randomq.enqueue(1001);
+        boolean failedFast = false;
+        try {
+            iterator.next();
+        }
+        catch (java.util.ConcurrentModificationException e) {
+            failedFast = true;
+        }
+        verify(failedFast,    "Iterator fails fast after enqueue()");
+
+        // bulk operations: k distinct items, one pass
+        Integer[] batch = randomq.sample(10, new Integer[10]);
+        verify((batch.length == 10 && randomq.size() == 1001), "sample(k) leaves items on the queue");
+        Object[] taken = randomq.dequeue(1000);
+        java.util.Arrays.fill(seen, false);
+        boolean distinct = true;
+        for (Object o : taken) {
+            int i = (Integer) o;
+            if (i <= 1000) {
+                distinct &= !seen[i];
+                seen[i] = true;
+            }
+        }
+        verify((distinct && randomq.size() == 1), "dequeue(k) removes k distinct items");
+        verify((randomq.dequeue(1, new Integer[0]).length == 1 && randomq.isEmpty()),
+               "dequeue(k, dst) allocates when dst is too small");
+        for (int i = 0; i < 1000; i++)
+            randomq.enqueue(i);
+        randomq.dequeue(1000);
+        verify((randomq.isEmpty() && randomq.capacity() == SIZE),
+               "dequeue(k) shrinks an emptied queue to its initial size");
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Array-backed variant of Deque for very large queues.
+ *
+ * Items live in a circular buffer whose capacity is a power of two, so the
+ * index of the i-th item is (head + i) & (capacity - 1). The buffer doubles
+ * when it is full and halves when it is a quarter full (never below
+ * MIN_CAPACITY), which makes every operation constant amortized time.
+ * A deque of N items uses between 4N and 16N bytes of references plus a
+ * constant, against about 40N bytes of nodes for Deque, and iteration walks
+ * consecutive array slots instead of chasing pointers.
+ *
+ * Deque stays the linked implementation because the assignment asks for
+ * constant worst-case time per operation; use this one when memory and
+ * locality matter more than the occasional resize.
+ *
+ * spliterator() splits the index range in half in constant time, so
+ * stream().parallel() hands every worker a contiguous run of the buffer.
+ */
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import edu.princeton.cs.algs4.StdOut;
+
+public class RingBufferDeque<Item> implements Iterable<Item> {
+    private static final int MIN_CAPACITY = 8;   // must be a power of two
+
+    private Item[] items;        // circular buffer, length is a power of two
+    private int head;            // index of the front item
+    private int N;               // number of elements
+
+    // construct an empty deque
+    public RingBufferDeque() {
+        // cast needed since no generic array creation in Java
+        items = (Item[]) new Object[MIN_CAPACITY];
+        head = 0;
+        N = 0;
+    }
+    // is the deque empty?
+    public boolean isEmpty() {
+        return (N == 0);
+    }
+    // return the number of items on the deque
+    public int size() {
+        return N;
+    }
+    // add the item to the front
+    public void addFirst(Item item) {
+        if (item == null)
+            throw new java.lang.NullPointerException("Cannot add a null item!");
+        if (N == items.length)
+            resize(2*items.length);
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
+        N++;
+    }
+    // add the item to the end
+    public void addLast(Item item) {
+        if (item == null)
+            throw new java.lang.NullPointerException("Cannot add a null item!");
+        if (N == items.length)
+            resize(2*items.length);
+        items[(head + N) & (items.length - 1)] = item;
+        N++;
+    }
+    // remove and return the item from the front
+    public Item removeFirst() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Cannot remove from empty deque!");
+        Item item = items[head];
+        // avoid loitering
+        items[head] = null;
+        head = (head + 1) & (items.length - 1);
+        N--;
+        shrinkIfSparse();
+        return item;
+    }
+    // remove and return the item from the end
+    public Item removeLast() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Cannot remove from empty deque!");
+        int tail = (head + N - 1) & (items.length - 1);
+        Item item = items[tail];
+        // avoid loitering
+        items[tail] = null;
+        N--;
+        shrinkIfSparse();
+        return item;
+    }
+    // halve the buffer when it is a quarter full
+    private void shrinkIfSparse() {
+        if (items.length > MIN_CAPACITY && N == items.length/4)
+            resize(items.length/2);
+    }
+    // move the items to a buffer of the given power-of-two capacity, front at index 0
+    private void resize(int capacity) {
+        if (capacity < 0)
+            throw new java.lang.IllegalStateException("Deque is too large!");
+        assert capacity >= N && Integer.bitCount(capacity) == 1;
+        Item[] temp = (Item[]) new Object[capacity];
+        // copy the wrapped buffer as at most two contiguous runs
+        int firstRun = Math.min(N, items.length - head);
+        System.arraycopy(items, head, temp, 0, firstRun);
+        System.arraycopy(items, 0, temp, firstRun, N - firstRun);
+        items = temp;
+        head = 0;
+    }
+    // length of the buffer
+    private int capacity() {
+        return items.length;
+    }
+    // return an iterator over items in order from front to end
+    public Iterator<Item> iterator() {
+        return new RingBufferIterator();
+    }
+
+    // return a spliterator over items in order from front to end; the deque
+    // must not change while it is in use
+    public Spliterator<Item> spliterator() {
+        return new RingBufferSpliterator(items, head, 0, N);
+    }
+    // return a sequential stream of the items, call parallel() to split it
+    public Stream<Item> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private class RingBufferSpliterator implements Spliterator<Item> {
+        private final Item[] buffer;     // the buffer and front at construction
+        private final int front;
+        private int lo;                  // positions [lo, hi) counted from the front
+        private final int hi;
+
+        public RingBufferSpliterator(Item[] buffer, int front, int lo, int hi) {
+            this.buffer = buffer;
+            this.front = front;
+            this.lo = lo;
+            this.hi = hi;
+        }
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            if (action == null)
+                throw new java.lang.NullPointerException("Action is null!");
+            if (lo >= hi)
+                return false;
+            action.accept(buffer[(front + lo++) & (buffer.length - 1)]);
+            return true;
+        }
+        public void forEachRemaining(Consumer<? super Item> action) {
+            if (action == null)
+                throw new java.lang.NullPointerException("Action is null!");
+            int mask = buffer.length - 1;
+            for (int i = lo; i < hi; i++)
+                action.accept(buffer[(front + i) & mask]);
+            lo = hi;
+        }
+        public Spliterator<Item> trySplit() {
+            int mid = (lo + hi) >>> 1;
+            if (mid <= lo)
+                return null;
+            // hand off the front half, keep the back half
+            Spliterator<Item> prefix = new RingBufferSpliterator(buffer, front, lo, mid);
+            lo = mid;
+            return prefix;
+        }
+        public long estimateSize() {
+            return hi - lo;
+        }
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    private class RingBufferIterator implements Iterator<Item> {
+        private int current = 0;     // position of the next item, counted from the front
+
+        public boolean hasNext() {
+            return current < N;
+        }
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException(
+                "Iterator remove is not supported!");
+        }
+        public Item next() {
+            if (current >= N)
+                throw new java.util.NoSuchElementException(
+                    "There is no next item!");
+            return items[(head + current++) & (items.length - 1)];
+        }
+    }
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+    // unit testing: the same checks as Deque, plus wrap-around and resizing
+    public static void main(String[] args) {
+        RingBufferDeque<Integer> deque = new RingBufferDeque<Integer>();
+
+        deque.addLast(1000);
+        int item = deque.removeFirst();
+        verify((item == 1000),     "addLast() followed by removeFirst()");
+        verify(deque.isEmpty(),    "deque should be empty");
+        deque.addFirst(1);
+        item = deque.removeLast();
+        verify((item == 1),        "addFirst() followed by removeLast()");
+        verify(deque.isEmpty(),    "deque should be empty");
+
+        Iterator<Integer> iterator = deque.iterator();
+        verify((!iterator.hasNext()), "hasNext() should be false");
+
+        // fill from both ends so the front wraps around the end of the buffer
+        for (int i = 0; i < 100; i++)
+            deque.addLast(i);
+        for (int i = -1; i >= -100; i--)
+            deque.addFirst(i);
+        verify((deque.size() == 200), "Size should be 200");
+        int expected = -100;
+        boolean inOrder = true;
+        for (int i : deque)
+            inOrder &= (i == expected++);
+        verify(inOrder && expected == 100, "Iterator walks front to end");
+
+        boolean removedInOrder = true;
+        for (int i = 99; i >= 0; i--)
+            removedInOrder &= (deque.removeLast() == i);
+        for (int i = -100; i < -1; i++)
+            removedInOrder &= (deque.removeFirst() == i);
+        verify(removedInOrder, "removeLast() and removeFirst() return items in order");
+        verify((deque.size() == 1), "Size should be 1");
+        verify((deque.capacity() == MIN_CAPACITY), "Buffer shrinks back to its minimum");
+        item = deque.removeFirst();
+        verify(deque.isEmpty() && item == -1, "deque should be empty");
+
+        for (int i = 0; i < 100000; i++)
+            deque.addFirst(i);
+        long sum = 0;
+        for (int i : deque)
+            sum += i;
+        verify((deque.stream().parallel().mapToLong(Integer::longValue).sum() == sum),
+               "Parallel stream sums every item");
+        verify((deque.stream().parallel().skip(5).findFirst().get() == 99994),
+               "Parallel stream keeps front-to-end order");
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * A deque for more items than fit on the heap.
+ *
+ * Items are kept in fixed-size segments. The two segments at each end stay
+ * on the heap; a segment further in is written to a temporary file through a
+ * pluggable Serializer and dropped, but only once an end segment fills past
+ * half and the segment is two away from both ends. A spilled segment is read
+ * back through a memory-mapped FileChannel when it becomes the neighbour of
+ * an end segment, by a background thread, so removeFirst() and removeLast()
+ * normally find the next segment already on the heap.
+ *
+ * The half-segment of slack means a spill or a read follows at least half a
+ * segment of operations at that end, so alternating adds and removes at a
+ * segment boundary does no I/O and addFirst, addLast, removeFirst and
+ * removeLast stay constant amortized time. The order is the same as Deque:
+ * FIFO through addLast/removeFirst, LIFO through addLast/removeLast.
+ *
+ * close() stops the prefetch thread and deletes the temporary files.
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import edu.princeton.cs.algs4.StdOut;
+
+public class SpillingDeque<Item> implements Iterable<Item>, AutoCloseable {
+    private static final int DEFAULT_SEGMENT = 1 << 16;   // items per segment
+
+    // turns items into bytes and back
+    public interface Serializer<Item> {
+        void write(Item item, DataOutput out) throws IOException;
+        Item read(DataInput in) throws IOException;
+    }
+
+    // items[lo..hi) of a segment, or a file holding them while spilled
+    private class Segment {
+        private Item[] items;             // null while spilled
+        private int lo;
+        private int hi;
+        private Path file;                // spill file, null unless spilled
+        private Future<Item[]> prefetch;  // read of the spill file in progress
+
+        public Segment(int start) {
+            items = (Item[]) new Object[segmentSize];
+            lo = start;
+            hi = start;
+        }
+        public int size() {
+            return hi - lo;
+        }
+    }
+
+    private final Serializer<Item> serializer;
+    private final int segmentSize;
+    private final Path directory;         // where spill files go
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+    private final ExecutorService prefetcher;
+    private long N;                       // number of elements
+    private int spilled;                  // segments currently on disk
+
+    // construct an empty deque with default segments in the temporary directory
+    public SpillingDeque(Serializer<Item> serializer) {
+        this(serializer, DEFAULT_SEGMENT, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+    // construct an empty deque with segments of the given number of items,
+    // spilled to files in directory
+    public SpillingDeque(Serializer<Item> serializer, int segmentSize, Path directory) {
+        if (serializer == null || directory == null)
+            throw new java.lang.NullPointerException("Serializer and directory cannot be null!");
+        if (segmentSize <= 0)
+            throw new java.lang.IllegalArgumentException("Segment size must be positive!");
+        this.serializer = serializer;
+        this.segmentSize = segmentSize;
+        this.directory = directory;
+        prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SpillingDeque prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    // is the deque empty?
+    public boolean isEmpty() {
+        return (N == 0);
+    }
+    // return the number of items on the deque
+    public long size() {
+        return N;
+    }
+    // number of segments currently spilled to disk
+    public int spilledSegments() {
+        return spilled;
+    }
+    // add the item to the front
+    public void addFirst(Item item) {
+        if (item == null)
+            throw new java.lang.NullPointerException("Cannot add a null item!");
+        Segment first = segments.peekFirst();
+        if (first == null || first.lo == 0) {
+            // a new front segment fills from its end towards index 0
+            first = new Segment(segmentSize);
+            segments.addFirst(first);
+        }
+        first.items[--first.lo] = item;
+        N++;
+        if (segmentSize - first.lo == (segmentSize + 1) / 2)
+            spillMiddle();
+    }
+    // add the item to the end
+    public void addLast(Item item) {
+        if (item == null)
+            throw new java.lang.NullPointerException("Cannot add a null item!");
+        Segment last = segments.peekLast();
+        if (last == null || last.hi == segmentSize) {
+            last = new Segment(0);
+            segments.addLast(last);
+        }
+        last.items[last.hi++] = item;
+        N++;
+        if (last.hi == (segmentSize + 1) / 2)
+            spillMiddle();
+    }
+    // remove and return the item from the front
+    public Item removeFirst() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Cannot remove from empty deque!");
+        Segment first = segments.peekFirst();
+        Item item = first.items[first.lo];
+        // avoid loitering
+        first.items[first.lo++] = null;
+        N--;
+        if (first.size() == 0) {
+            segments.pollFirst();
+            if (!segments.isEmpty()) {
+                load(segments.peekFirst());
+                prefetchNeighbour(true);
+            }
+        }
+        return item;
+    }
+    // remove and return the item from the end
+    public Item removeLast() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Cannot remove from empty deque!");
+        Segment last = segments.peekLast();
+        Item item = last.items[--last.hi];
+        // avoid loitering
+        last.items[last.hi] = null;
+        N--;
+        if (last.size() == 0) {
+            segments.pollLast();
+            if (!segments.isEmpty()) {
+                load(segments.peekLast());
+                prefetchNeighbour(false);
+            }
+        }
+        return item;
+    }
+    // stop prefetching and delete every spill file
+    public void close() {
+        prefetcher.shutdownNow();
+        for (Segment segment : segments)
+            if (segment.file != null)
+                delete(segment.file);
+        segments.clear();
+        N = 0;
+        spilled = 0;
+    }
+
+    // spill the segment two away from each end; with fewer than five segments
+    // that one is next to the other end and stays
+    private void spillMiddle() {
+        if (segments.size() < 5)
+            return;
+        Iterator<Segment> it = segments.iterator();
+        it.next();
+        it.next();
+        spill(it.next());
+        it = segments.descendingIterator();
+        it.next();
+        it.next();
+        spill(it.next());
+    }
+    // write a middle segment to disk and drop its items
+    private void spill(Segment segment) {
+        if (segment.items == null)
+            return;
+        try {
+            Path file = Files.createTempFile(directory, "deque", ".segment");
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                for (int i = segment.lo; i < segment.hi; i++)
+                    serializer.write(segment.items[i], out);
+            }
+            segment.file = file;
+            segment.items = null;
+            spilled++;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not spill a deque segment", e);
+        }
+    }
+    // start reading the spilled neighbour of the front (or back) segment
+    private void prefetchNeighbour(boolean front) {
+        if (segments.size() < 3)
+            return;
+        Iterator<Segment> it = front ? segments.iterator() : segments.descendingIterator();
+        it.next();
+        final Segment next = it.next();
+        if (next.items != null || next.prefetch != null)
+            return;
+        next.prefetch = prefetcher.submit(new Callable<Item[]>() {
+            public Item[] call() throws IOException {
+                return read(next.file, next.lo, next.hi);
+            }
+        });
+    }
+    // bring a segment back onto the heap, from its prefetch if one was started
+    private void load(Segment segment) {
+        if (segment.items != null)
+            return;
+        try {
+            if (segment.prefetch != null)
+                segment.items = segment.prefetch.get();
+            else
+                segment.items = read(segment.file, segment.lo, segment.hi);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read a deque segment", e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.lang.IllegalStateException("Interrupted while reading a segment.", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw new UncheckedIOException("Could not read a deque segment",
+                                               (IOException) e.getCause());
+            throw new java.lang.IllegalStateException("Could not read a deque segment.", e.getCause());
+        }
+        segment.prefetch = null;
+        delete(segment.file);
+        segment.file = null;
+        spilled--;
+    }
+    // items lo..hi of a segment from its spill file, read through a mapped buffer
+    private Item[] read(Path file, int lo, int hi) throws IOException {
+        Item[] items = (Item[]) new Object[segmentSize];
+        try (FileChannel channel = FileChannel.open(file)) {
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(new InputStream() {
+                public int read() {
+                    return mapped.hasRemaining() ? mapped.get() & 0xff : -1;
+                }
+                public int read(byte[] b, int off, int len) {
+                    if (!mapped.hasRemaining())
+                        return -1;
+                    int n = Math.min(len, mapped.remaining());
+                    mapped.get(b, off, n);
+                    return n;
+                }
+            });
+            for (int i = lo; i < hi; i++)
+                items[i] = serializer.read(in);
+        }
+        return items;
+    }
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            // a mapping may still hold the file on some platforms
+            file.toFile().deleteOnExit();
+        }
+    }
+    // return an iterator over items in order from front to end; spilled
+    // segments are read as the iterator reaches them and are not kept
+    public Iterator<Item> iterator() {
+        return new SpillingIterator();
+    }
+
+    private class SpillingIterator implements Iterator<Item> {
+        private final Iterator<Segment> next = segments.iterator();
+        private Item[] items;            // items of the current segment
+        private int current;
+        private int end;
+
+        public boolean hasNext() {
+            while (current == end && next.hasNext()) {
+                Segment segment = next.next();
+                try {
+                    items = segment.items != null ? segment.items
+                                                  : read(segment.file, segment.lo, segment.hi);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException("Could not read a deque segment", e);
+                }
+                current = segment.lo;
+                end = segment.hi;
+            }
+            return current < end;
+        }
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException(
+                "Iterator remove is not supported!");
+        }
+        public Item next() {
+            if (!hasNext())
+                throw new java.util.NoSuchElementException(
+                    "There is no next item!");
+            return items[current++];
+        }
+    }
+
+    // serializer for strings, as modified UTF-8
+    public static class StringSerializer implements Serializer<String> {
+        public void write(String item, DataOutput out) throws IOException {
+            out.writeUTF(item);
+        }
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    }
+
+    // a StringSerializer that counts the items it writes and reads
+    private static class CountingSerializer extends StringSerializer {
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicLong reads = new AtomicLong();   // also from the prefetch thread
+
+        public void write(String item, DataOutput out) throws IOException {
+            writes.incrementAndGet();
+            super.write(item, out);
+        }
+        public String read(DataInput in) throws IOException {
+            reads.incrementAndGet();
+            return super.read(in);
+        }
+    }
+
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+    // unit testing with 1000-item segments, so most of the items spill
+    public static void main(String[] args) throws IOException {
+        int n = 200000;
+        Path directory = Files.createTempDirectory("spilling-deque");
+        CountingSerializer io = new CountingSerializer();
+        try (SpillingDeque<String> deque = new SpillingDeque<String>(io, 1000, directory)) {
+            for (int i = 0; i < n; i++)
+                deque.addLast("item" + i);
+            verify(deque.size() == n && deque.spilledSegments() == n/1000 - 4,
+                   "all but the two segments at each end are spilled");
+
+            // both end segments are full, so every add starts a new segment
+            // and the remove right after it drops that segment again
+            long writes = io.writes.get();
+            long reads = io.reads.get();
+            for (int i = 0; i < 10000; i++) {
+                deque.addFirst("front");
+                deque.removeFirst();
+                deque.addLast("back");
+                deque.removeLast();
+            }
+            verify(deque.spilledSegments() == n/1000 - 4
+                   && io.writes.get() == writes && io.reads.get() == reads,
+                   "add and remove at a segment boundary do no I/O");
+            int expected = 0;
+            boolean inOrder = true;
+            for (String item : deque)
+                inOrder &= item.equals("item" + expected++);
+            verify(inOrder && expected == n, "iterator reads spilled segments in order");
+
+            boolean fifo = true;
+            for (int i = 0; i < n/2; i++)
+                fifo &= deque.removeFirst().equals("item" + i);
+            verify(fifo, "addLast() and removeFirst() are FIFO");
+            boolean lifo = true;
+            for (int i = n - 1; i >= n/2; i--)
+                lifo &= deque.removeLast().equals("item" + i);
+            verify(lifo && deque.isEmpty(), "addLast() and removeLast() are LIFO");
+
+            for (int i = 0; i < n; i++)
+                deque.addFirst("item" + i);
+            boolean front = true;
+            for (int i = 0; i < n; i++)
+                front &= deque.removeLast().equals("item" + i);
+            verify(front && deque.spilledSegments() == 0, "addFirst() and removeLast() are FIFO");
+        }
+        String[] left = directory.toFile().list();
+        verify(left != null && left.length == 0, "no spill files are left behind");
+        Files.delete(directory);
+    }
+}
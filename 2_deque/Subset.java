@@ -1,8 +1,76 @@
+/*
+ * Print k strings chosen uniformly at random from standard input.
+ *
+ *   java-algs4 Subset k < input.txt
+ *       reads every string into a RandomizedQueue, then dequeues k of them.
+ *   java-algs4 Subset -stream k [file] < input.txt
+ *   java-algs4 Subset -lines k [file] < input.txt
+ *       reservoir-sample k whitespace-separated strings (-stream) or non-empty
+ *       lines (-lines) from the file, or standard input when no file is given,
+ *       in O(k) memory. Input is read in large blocks through a channel
+ *       instead of StdIn, and Li's Algorithm L draws how many items to skip
+ *       between reservoir replacements, so skipped items are only scanned
+ *       for their end and never turned into Strings.
+ *   java-algs4 Subset -parallel k file [threads]
+ *   java-algs4 Subset -parallel-lines k file [threads]
+ *       the same sample from a file split into byte ranges on line boundaries,
+ *       sampled on worker threads (default: one per processor) and merged.
+ *       Every item gets an independent uniform key and the sample is the k
+ *       items with the largest keys (Efraimidis and Spirakis, with unit
+ *       weights). Each range keeps its own top k with exponential jumps
+ *       (A-ExpJ), and the top k of the union of those is exactly the top k
+ *       of the whole file, so the merged sample is uniform.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.StdRandom;
 
 public class Subset {
     public static void main(String[] args) {
+        if (args[0].equals("-parallel") || args[0].equals("-parallel-lines")) {
+            int k = Integer.parseInt(args[1]);
+            int threads = args.length > 3 ? Integer.parseInt(args[3])
+                                          : Runtime.getRuntime().availableProcessors();
+            try {
+                for (String item : parallelSample(args[2], k, threads,
+                                                  args[0].equals("-parallel-lines")))
+                    StdOut.println(item);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + args[2], e);
+            }
+            return;
+        }
+        if (args[0].equals("-stream") || args[0].equals("-lines")) {
+            int k = Integer.parseInt(args[1]);
+            boolean lines = args[0].equals("-lines");
+            try (ReadableByteChannel in = args.length > 2
+                     ? FileChannel.open(Paths.get(args[2]))
+                     : Channels.newChannel(System.in)) {
+                for (String item : reservoir(new TokenReader(in, lines), k))
+                    StdOut.println(item);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read input", e);
+            }
+            return;
+        }
         RandomizedQueue<String> randq = new RandomizedQueue<String>();
         int k = Integer.parseInt(args[0]);
         while (!StdIn.isEmpty()) {
@@ -13,4 +81,300 @@ public class Subset {
               StdOut.println(randq.dequeue());
         }
     }
+
+    // k items chosen uniformly from the reader (all of them if there are fewer),
+    // in random order; Algorithm L, Li (1994)
+    private static String[] reservoir(TokenReader in, int k) throws IOException {
+        if (k < 0)
+            throw new java.lang.IllegalArgumentException("k cannot be negative!");
+        String[] sample = new String[k];
+        int n = 0;
+        while (n < k && (sample[n] = in.next()) != null)
+            n++;
+        if (n < k)
+            return shuffled(java.util.Arrays.copyOf(sample, n));
+        if (k == 0)
+            return sample;
+        // W is distributed as the largest of k uniforms, the reservoir's threshold
+        double w = Math.exp(Math.log(1.0 - StdRandom.uniform()) / k);
+        while (true) {
+            // number of items that pass before the next one enters the reservoir
+            double skip = Math.floor(Math.log(1.0 - StdRandom.uniform()) / Math.log1p(-w));
+            if (in.skip(skip >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) skip) != (long) skip)
+                break;
+            String item = in.next();
+            if (item == null)
+                break;
+            sample[StdRandom.uniform(k)] = item;
+            w *= Math.exp(Math.log(1.0 - StdRandom.uniform()) / k);
+        }
+        return shuffled(sample);
+    }
+
+    private static String[] shuffled(String[] a) {
+        StdRandom.shuffle(a);
+        return a;
+    }
+
+    // k items chosen uniformly from the file (all of them if there are fewer),
+    // in random order, sampled in parallel over line-aligned byte ranges
+    private static String[] parallelSample(String filename, final int k, int threads,
+                                           final boolean lines) throws IOException {
+        if (k < 0 || threads <= 0)
+            throw new java.lang.IllegalArgumentException("k and threads cannot be negative!");
+        try (final FileChannel file = FileChannel.open(Paths.get(filename))) {
+            // a few ranges per thread, so one slow range does not hold up the rest
+            int ranges = (int) Math.max(1, Math.min(4L * threads, file.size() / (1 << 20)));
+            long[] bounds = new long[ranges + 1];
+            for (int r = 1; r < ranges; r++)
+                bounds[r] = lineStart(file, Math.max(bounds[r - 1], file.size() * r / ranges));
+            bounds[ranges] = file.size();
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                SplittableRandom root = new SplittableRandom();
+                List<Future<KeyedSample>> parts = new ArrayList<Future<KeyedSample>>(ranges);
+                for (int r = 0; r < ranges; r++) {
+                    final long start = bounds[r];
+                    final long end = bounds[r + 1];
+                    final SplittableRandom random = root.split();
+                    parts.add(pool.submit(new Callable<KeyedSample>() {
+                        public KeyedSample call() throws IOException {
+                            return KeyedSample.of(new TokenReader(file, start, end, lines), k, random);
+                        }
+                    }));
+                }
+                KeyedSample merged = new KeyedSample(k);
+                for (Future<KeyedSample> part : parts)
+                    merged.addAll(part.get());
+                return merged.itemsByKey();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.lang.IllegalStateException("Subset interrupted.", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new java.lang.IllegalStateException("Subset worker failed.", e.getCause());
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // first position at or after from that starts a line
+    private static long lineStart(FileChannel file, long from) throws IOException {
+        if (from == 0)
+            return 0;
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        for (long position = from - 1; ; ) {
+            buffer.clear();
+            int n = file.read(buffer, position);
+            if (n <= 0)
+                return file.size();
+            for (int i = 0; i < n; i++)
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            position += n;
+        }
+    }
+
+    // the k items with the largest keys seen so far, in a min-heap on key
+    private static class KeyedSample {
+        private final double[] keys;
+        private final String[] items;
+        private int size;
+
+        public KeyedSample(int k) {
+            keys = new double[k];
+            items = new String[k];
+        }
+        // top k of the reader's items under independent uniform keys, jumping
+        // straight to the next item that enters (A-ExpJ with unit weights)
+        public static KeyedSample of(TokenReader in, int k, SplittableRandom random)
+                throws IOException {
+            KeyedSample sample = new KeyedSample(k);
+            String item = null;
+            while (sample.size < k && (item = in.next()) != null)
+                sample.add(random.nextDouble(), item);
+            if (item == null || k == 0)
+                return sample;
+            while (true) {
+                // each item beats the smallest key t with probability 1 - t
+                double t = sample.keys[0];
+                double skip = Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(t));
+                if (in.skip(skip >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) skip) != (long) skip)
+                    break;
+                item = in.next();
+                if (item == null)
+                    break;
+                // the key of an item that beats t is uniform on (t, 1)
+                sample.add(t + (1.0 - t) * random.nextDouble(), item);
+            }
+            return sample;
+        }
+        public void addAll(KeyedSample other) {
+            for (int i = 0; i < other.size; i++)
+                add(other.keys[i], other.items[i]);
+        }
+        // keep the item if it is among the k largest keys
+        public void add(double key, String item) {
+            int i;
+            if (size < keys.length) {
+                // sift up from the new leaf
+                for (i = size++; i > 0 && keys[(i - 1) / 2] > key; i = (i - 1) / 2) {
+                    keys[i] = keys[(i - 1) / 2];
+                    items[i] = items[(i - 1) / 2];
+                }
+            }
+            else {
+                if (size == 0 || key <= keys[0])
+                    return;
+                // replace the smallest key and sift down
+                i = 0;
+                while (2*i + 1 < size) {
+                    int child = 2*i + 1;
+                    if (child + 1 < size && keys[child + 1] < keys[child])
+                        child++;
+                    if (keys[child] >= key)
+                        break;
+                    keys[i] = keys[child];
+                    items[i] = items[child];
+                    i = child;
+                }
+            }
+            keys[i] = key;
+            items[i] = item;
+        }
+        // the items in decreasing key order, which is a uniformly random order
+        public String[] itemsByKey() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            java.util.Arrays.sort(order, new java.util.Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(keys[b], keys[a]);
+                }
+            });
+            String[] sorted = new String[size];
+            for (int i = 0; i < size; i++)
+                sorted[i] = items[order[i]];
+            return sorted;
+        }
+    }
+
+    // splits a byte channel, or a byte range of a file, into UTF-8 strings
+    // separated by ASCII whitespace, or into non-empty lines with any trailing
+    // carriage return removed, reading it in 64 KB blocks
+    private static class TokenReader {
+        private final ReadableByteChannel channel;
+        private final FileChannel file;    // read by position when not null
+        private long offset;               // file position of the next block
+        private final long limit;          // end of the byte range
+        private final boolean lines;       // split on newlines only
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private final byte[] bytes = buffer.array();
+        private int position;              // next unread byte in bytes
+        private int end;                   // bytes[position..end) are unread
+        private byte[] token = new byte[128];
+        private int length;                // bytes of the current token
+
+        public TokenReader(ReadableByteChannel channel, boolean lines) {
+            this.channel = channel;
+            this.file = null;
+            this.limit = Long.MAX_VALUE;
+            this.lines = lines;
+        }
+        // positional reads leave the channel's own position alone, so readers
+        // of different ranges can share it across threads
+        public TokenReader(FileChannel file, long start, long end, boolean lines) {
+            this.channel = file;
+            this.file = file;
+            this.offset = start;
+            this.limit = end;
+            this.lines = lines;
+        }
+        // the next item, or null at the end of input
+        public String next() throws IOException {
+            length = 0;
+            if (!scan(true))
+                return null;
+            // a line read from a CRLF file keeps no trailing carriage return
+            int n = length;
+            if (lines && n > 0 && token[n - 1] == '\r')
+                n--;
+            return new String(token, 0, n, StandardCharsets.UTF_8);
+        }
+        // pass over up to n items without decoding them; returns how many were passed
+        public long skip(long n) throws IOException {
+            for (long skipped = 0; skipped < n; skipped++)
+                if (!scan(false))
+                    return skipped;
+            return n;
+        }
+        // move past the next item, keeping its bytes if keep; false at end of input
+        private boolean scan(boolean keep) throws IOException {
+            while (true) {
+                // skip separators, which for lines passes over empty lines
+                while (true) {
+                    if (position == end && !fill())
+                        return false;
+                    if (!isSeparator(bytes[position]))
+                        break;
+                    position++;
+                }
+                long n = 0;                // bytes of the item
+                byte last = 0;
+                while (true) {
+                    if (position == end && !fill())
+                        break;
+                    int start = position;
+                    while (position < end && !isSeparator(bytes[position]))
+                        position++;
+                    if (position > start) {
+                        n += position - start;
+                        last = bytes[position - 1];
+                    }
+                    if (keep)
+                        append(start, position - start);
+                    if (position < end)
+                        break;
+                }
+                // an empty line of a CRLF file is just its carriage return
+                if (!(lines && n == 1 && last == '\r'))
+                    return true;
+                length = 0;
+            }
+        }
+        private boolean isSeparator(byte b) {
+            return lines ? b == '\n' : isSpace(b);
+        }
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+        }
+        private void append(int start, int n) {
+            if (length + n > token.length)
+                token = java.util.Arrays.copyOf(token, Math.max(2*token.length, length + n));
+            System.arraycopy(bytes, start, token, length, n);
+            length += n;
+        }
+        // read the next block; false at end of input
+        private boolean fill() throws IOException {
+            buffer.clear();
+            if (limit - offset < buffer.capacity())
+                buffer.limit((int) Math.max(0, limit - offset));
+            int n = -1;
+            if (buffer.hasRemaining()) {
+                do {
+                    n = file != null ? file.read(buffer, offset) : channel.read(buffer);
+                } while (n == 0);
+            }
+            position = 0;
+            end = Math.max(n, 0);
+            offset += end;
+            return n > 0;
+        }
+    }
 }
\ No newline at end of file
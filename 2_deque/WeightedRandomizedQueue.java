@@ -0,0 +1,330 @@
+/*
+ * A RandomizedQueue whose items carry positive weights: dequeue() and sample()
+ * return an item with probability proportional to its weight.
+ *
+ * Items and weights are kept in parallel resizing arrays with the same
+ * move-the-last-item-into-the-hole removal as RandomizedQueue, and a Fenwick
+ * tree (binary indexed tree) over the weights gives prefix sums. Choosing an
+ * item is a descent of the tree for a uniform point in [0, total weight), so
+ * enqueue, dequeue, sample and setWeight all take O(log N). A HashMap from
+ * item to array index finds the item whose weight changes, which means an
+ * item can be on the queue at most once.
+ *
+ * When the queue will not change for a while, freeze() builds an alias table
+ * (Vose's method) in O(N), after which sample() takes constant time. Any
+ * change to the queue discards the table.
+ */
+import java.util.HashMap;
+import java.util.Iterator;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+public class WeightedRandomizedQueue<Item> implements Iterable<Item> {
+    private Item[] queue;                 // queue elements
+    private double[] weights;             // weights[i] = weight of queue[i]
+    private Fenwick sums;                 // prefix sums of weights[0..N)
+    private HashMap<Item, Integer> index; // position of every item in queue
+    private int N = 0;                    // number of elements on queue
+    private double[] aliasProb;           // alias table, null unless frozen
+    private int[] alias;
+
+    // Fenwick tree of doubles over positions 0..capacity-1
+    private static class Fenwick {
+        private final double[] tree;      // 1-based, tree[i] = sum of a range ending at i-1
+
+        // build in O(n) from w[0..n) in a tree of the given capacity
+        public Fenwick(double[] w, int n, int capacity) {
+            tree = new double[capacity + 1];
+            // every node passes its sum up, including empty ones past n, so
+            // the nodes find() starts from cover the whole capacity
+            for (int i = 1; i <= capacity; i++) {
+                if (i <= n)
+                    tree[i] += w[i - 1];
+                int parent = i + (i & -i);
+                if (parent <= capacity)
+                    tree[parent] += tree[i];
+            }
+        }
+        public void add(int i, double delta) {
+            for (i++; i < tree.length; i += i & -i)
+                tree[i] += delta;
+        }
+        // sum of positions [0, n)
+        public double prefix(int n) {
+            double sum = 0.0;
+            for (; n > 0; n -= n & -n)
+                sum += tree[n];
+            return sum;
+        }
+        // smallest position i with prefix(i + 1) > r, at most n - 1
+        public int find(double r, int n) {
+            int pos = 0;
+            for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+                int next = pos + step;
+                if (next < tree.length && tree[next] <= r) {
+                    pos = next;
+                    r -= tree[next];
+                }
+            }
+            // rounding can push r past the last item
+            return Math.min(pos, n - 1);
+        }
+    }
+
+    // construct an empty weighted randomized queue
+    public WeightedRandomizedQueue() {
+        final int SIZE = 10; // Initial size of array
+        // cast needed since no generic array creation in Java
+        queue = (Item[]) new Object[SIZE];
+        weights = new double[SIZE];
+        sums = new Fenwick(weights, 0, SIZE);
+        index = new HashMap<Item, Integer>();
+    }
+    // is the queue empty?
+    public boolean isEmpty() {
+        return N == 0;
+    }
+    // return the number of items on the queue
+    public int size() {
+        return N;
+    }
+    // return the sum of the weights of all items
+    public double totalWeight() {
+        return sums.prefix(N);
+    }
+    // resize the underlying arrays and rebuild the tree, which also clears
+    // rounding error accumulated by add()
+    private void resize(int capacity) {
+        assert capacity >= N;
+        queue = java.util.Arrays.copyOf(queue, capacity);
+        weights = java.util.Arrays.copyOf(weights, capacity);
+        sums = new Fenwick(weights, N, capacity);
+    }
+    // add the item with the given weight
+    public void enqueue(Item item, double weight) {
+        if (item == null)
+            throw new java.lang.NullPointerException("Cannot add a null item!");
+        checkWeight(weight);
+        if (index.containsKey(item))
+            throw new java.lang.IllegalArgumentException("Item is already on the queue!");
+        if (N == queue.length)
+            resize(2*queue.length);
+        queue[N] = item;
+        weights[N] = weight;
+        sums.add(N, weight);
+        index.put(item, N);
+        N++;
+        aliasProb = null;
+    }
+    // remove and return an item chosen with probability proportional to its weight
+    public Item dequeue() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Queue is empty!");
+        int rand = pick();
+        Item item = queue[rand];
+        // Move last element to this position
+        int last = N-1;
+        if (rand != last) {
+            sums.add(rand, weights[last] - weights[rand]);
+            queue[rand] = queue[last];
+            weights[rand] = weights[last];
+            index.put(queue[rand], rand);
+        }
+        sums.add(last, -weights[last]);
+        // Remove last element without loitering
+        queue[last] = null;
+        weights[last] = 0.0;
+        index.remove(item);
+        N--;
+        aliasProb = null;
+        // shrink size of array if necessary
+        if (N > 0 && N == queue.length/4)
+            resize(queue.length/2);
+        return item;
+    }
+    // return (but do not remove) an item chosen with probability proportional
+    // to its weight; constant time while the queue is frozen
+    public Item sample() {
+        if (isEmpty())
+            throw new java.util.NoSuchElementException(
+                "Queue is empty!");
+        if (aliasProb != null) {
+            int rand = StdRandom.uniform(N);
+            return queue[StdRandom.uniform() < aliasProb[rand] ? rand : alias[rand]];
+        }
+        return queue[pick()];
+    }
+    // return the weight of the item
+    public double weight(Item item) {
+        return weights[position(item)];
+    }
+    // change the weight of an item on the queue
+    public void setWeight(Item item, double weight) {
+        checkWeight(weight);
+        int i = position(item);
+        sums.add(i, weight - weights[i]);
+        weights[i] = weight;
+        aliasProb = null;
+    }
+    // build the alias table so sample() takes constant time until the next change
+    public void freeze() {
+        double[] prob = new double[N];
+        int[] aliasOf = new int[N];
+        int[] small = new int[N];
+        int[] large = new int[N];
+        int smallCount = 0;
+        int largeCount = 0;
+        double scale = N / totalWeight();
+        for (int i = 0; i < N; i++) {
+            prob[i] = weights[i] * scale;
+            if (prob[i] < 1.0)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+        // pair every short column with a tall one that fills it up to 1
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            aliasOf[less] = more;
+            prob[more] = (prob[more] + prob[less]) - 1.0;
+            if (prob[more] < 1.0)
+                small[smallCount++] = more;
+            else
+                large[largeCount++] = more;
+        }
+        // what is left is 1 up to rounding
+        while (largeCount > 0)
+            prob[large[--largeCount]] = 1.0;
+        while (smallCount > 0)
+            prob[small[--smallCount]] = 1.0;
+        aliasProb = prob;
+        alias = aliasOf;
+    }
+    // is the alias table current?
+    public boolean isFrozen() {
+        return aliasProb != null;
+    }
+    // position of a uniform point in [0, total weight)
+    private int pick() {
+        return sums.find(StdRandom.uniform() * totalWeight(), N);
+    }
+    private int position(Item item) {
+        Integer i = index.get(item);
+        if (i == null)
+            throw new java.util.NoSuchElementException("Item is not on the queue!");
+        return i;
+    }
+    private static void checkWeight(double weight) {
+        if (!(weight > 0.0) || Double.isInfinite(weight))
+            throw new java.lang.IllegalArgumentException(
+                "Weight must be positive and finite!");
+    }
+    // return an independent iterator over items in weighted random order, the
+    // order in which repeated dequeue() calls would return them
+    public Iterator<Item> iterator() {
+        return new WeightedQueueIterator();
+    }
+
+    private class WeightedQueueIterator implements Iterator<Item> {
+        private final Item[] copyq;
+        private final double[] copyw;
+        private final Fenwick left;       // weights of the items not returned yet
+        private double remaining;
+        private int current;
+
+        public WeightedQueueIterator() {
+            copyq = java.util.Arrays.copyOf(queue, N);
+            copyw = java.util.Arrays.copyOf(weights, N);
+            left = new Fenwick(copyw, N, N);
+            remaining = left.prefix(N);
+        }
+        public boolean hasNext() {
+            return current != copyq.length;
+        }
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException(
+                "Iterator remove is not supported!");
+        }
+        public Item next() {
+            if (current == copyq.length)
+                throw new java.util.NoSuchElementException(
+                    "There is no next item!");
+            int rand = left.find(StdRandom.uniform() * remaining, N);
+            // rounding can land on an item already returned; take the next live one
+            while (copyw[rand] == 0.0)
+                rand = (rand + 1) % copyw.length;
+            left.add(rand, -copyw[rand]);
+            remaining -= copyw[rand];
+            copyw[rand] = 0.0;
+            current++;
+            if (current % 1024 == 0)
+                remaining = left.prefix(N);
+            return copyq[rand];
+        }
+    }
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+    // unit testing: item i has weight i, so it should be drawn i/sum times as often
+    public static void main(String[] args) {
+        WeightedRandomizedQueue<Integer> queue = new WeightedRandomizedQueue<Integer>();
+        for (int i = 1; i <= 10; i++)
+            queue.enqueue(i, i);
+        verify((queue.totalWeight() == 55.0), "Total weight is 55");
+
+        int draws = 550000;
+        int[] fenwick = new int[11];
+        for (int k = 0; k < draws; k++)
+            fenwick[queue.sample()]++;
+        queue.freeze();
+        int[] frozen = new int[11];
+        for (int k = 0; k < draws; k++)
+            frozen[queue.sample()]++;
+        boolean close = true;
+        for (int i = 1; i <= 10; i++) {
+            close &= Math.abs(fenwick[i] - 10000.0*i) < 5 * Math.sqrt(10000.0*i);
+            close &= Math.abs(frozen[i] - 10000.0*i) < 5 * Math.sqrt(10000.0*i);
+        }
+        verify(close, "sample() frequencies follow the weights, tree and alias table");
+
+        queue.setWeight(10, 100.0);
+        verify(!queue.isFrozen() && queue.totalWeight() == 145.0, "setWeight() unfreezes the queue");
+        int seen = 0;
+        for (int i : queue)
+            seen += i;
+        verify((seen == 55), "Iterator returns every item once");
+        int sum = 0;
+        while (!queue.isEmpty())
+            sum += queue.dequeue();
+        verify((sum == 55 && queue.totalWeight() == 0.0), "dequeue() removes every item");
+
+        // a fresh queue past its initial capacity, so the tree is rebuilt by resize()
+        queue = new WeightedRandomizedQueue<Integer>();
+        for (int i = 1; i <= 40; i++)
+            queue.enqueue(i, 1.0);
+        int[] counts = new int[41];
+        for (int k = 0; k < 400000; k++)
+            counts[queue.sample()]++;
+        while (queue.size() > 5)
+            queue.dequeue();
+        int[] shrunk = new int[41];
+        for (int k = 0; k < 50000; k++)
+            shrunk[queue.sample()]++;
+        boolean even = true;
+        for (int i = 1; i <= 40; i++) {
+            even &= Math.abs(counts[i] - 10000.0) < 5 * Math.sqrt(10000.0);
+            if (shrunk[i] != 0)
+                even &= Math.abs(shrunk[i] - 10000.0) < 5 * Math.sqrt(10000.0);
+        }
+        verify(even, "sample() stays uniform for equal weights after growing and shrinking");
+    }
+}
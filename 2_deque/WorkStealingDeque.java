@@ -0,0 +1,251 @@
+/*
+ * A Chase-Lev work-stealing deque ("Dynamic Circular Work-Stealing Deque",
+ * Chase and Lev, SPAA 2005, with the memory orderings of Le et al., PPoPP 2013).
+ *
+ * One owner thread adds and removes items at the end, like a stack, and any
+ * number of thief threads take items from the front. The owner's addLast()
+ * and pollLast() never wait: they only contend with a thief for the very last
+ * item, and then a single compareAndSet decides who gets it. stealFirst() is
+ * one compareAndSet on the front index. Items live in a circular array that
+ * the owner doubles when it is full; thieves still reading the old array see
+ * the same items there, since growing copies rather than moves them.
+ * Whoever takes an item clears its slot, so nothing loiters: a thief clears
+ * it with compareAndSet after winning the front index, and addLast() grows
+ * the array rather than overwrite a slot a thief has not cleared yet, so a
+ * late clear can never hit a newer item.
+ *
+ * Execution: java-algs4 WorkStealingDeque thieves itemsPerRun
+ *   checks that every item is taken exactly once and compares throughput with
+ *   a Deque whose operations all run under one lock.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import edu.princeton.cs.algs4.StdOut;
+
+public class WorkStealingDeque<Item> {
+    private static final int MIN_CAPACITY = 32;   // must be a power of two
+
+    private final AtomicLong top = new AtomicLong();   // index of the front item, only grows
+    private volatile long bottom;                      // index after the last item, owner writes
+    private volatile AtomicReferenceArray<Item> items; // slot of index i is i & (length - 1)
+
+    // construct an empty deque
+    public WorkStealingDeque() {
+        items = new AtomicReferenceArray<Item>(MIN_CAPACITY);
+    }
+    // is the deque empty? (a snapshot when other threads are changing it)
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    // return the number of items on the deque (a snapshot when other threads are changing it)
+    public int size() {
+        long n = bottom - top.get();
+        return n < 0 ? 0 : (int) n;
+    }
+    // add the item to the end; owner thread only
+    public void addLast(Item item) {
+        if (item == null)
+            throw new java.lang.NullPointerException("Cannot add a null item!");
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<Item> a = items;
+        // a slot still set here belongs to a thief that has not cleared it
+        if (b - t >= a.length() || a.get((int) b & (a.length() - 1)) != null)
+            a = grow(a, t, b);
+        a.lazySet((int) b & (a.length() - 1), item);
+        // the volatile write publishes the item to thieves
+        bottom = b + 1;
+    }
+    // remove and return the item from the end; owner thread only
+    public Item removeLast() {
+        Item item = pollLast();
+        if (item == null)
+            throw new java.util.NoSuchElementException(
+                "Cannot remove from empty deque!");
+        return item;
+    }
+    // remove and return the item from the end, or null if there is none; owner thread only
+    public Item pollLast() {
+        long b = bottom - 1;
+        AtomicReferenceArray<Item> a = items;
+        // claim the last slot before looking at top; volatile write then
+        // volatile read cannot be reordered, so a thief sees the claim or we see its steal
+        bottom = b;
+        long t = top.get();
+        if (t > b) {
+            // empty, restore bottom
+            bottom = b + 1;
+            return null;
+        }
+        int slot = (int) b & (a.length() - 1);
+        Item item = a.get(slot);
+        if (t < b) {
+            // more than one item left, no thief can reach this one
+            a.lazySet(slot, null);
+            return item;
+        }
+        // the last item: race the thieves for it; the winner clears the slot
+        if (top.compareAndSet(t, t + 1))
+            a.lazySet(slot, null);
+        else
+            item = null;
+        bottom = b + 1;
+        return item;
+    }
+    // remove and return the item from the front, or null if the deque was empty
+    // or another thread took the item first; any thread
+    public Item stealFirst() {
+        long t = top.get();
+        long b = bottom;
+        if (t >= b)
+            return null;
+        AtomicReferenceArray<Item> a = items;
+        int slot = (int) t & (a.length() - 1);
+        Item item = a.get(slot);
+        // a cleared slot means the item at t is gone already
+        if (item == null || !top.compareAndSet(t, t + 1))
+            return null;
+        // the owner does not reuse the slot until it is cleared, so this
+        // only fails if grow() has cleared it already
+        a.compareAndSet(slot, item, null);
+        return item;
+    }
+    // copy items [t, b) into an array twice as large; owner thread only
+    private AtomicReferenceArray<Item> grow(AtomicReferenceArray<Item> a, long t, long b) {
+        int capacity = 2 * a.length();
+        if (capacity < 0)
+            throw new java.lang.IllegalStateException("Deque is too large!");
+        AtomicReferenceArray<Item> bigger = new AtomicReferenceArray<Item>(capacity);
+        for (long i = t; i < b; i++)
+            bigger.lazySet((int) i & (capacity - 1), a.get((int) i & (a.length() - 1)));
+        items = bigger;
+        // copies of items stolen during the copy are cleared here; one stolen
+        // after this read of top stays until addLast() grows past it
+        for (long i = t, front = top.get(); i < front; i++)
+            bigger.lazySet((int) i & (capacity - 1), null);
+        return bigger;
+    }
+
+    // verification helper
+    private static void verify(boolean b, String message) {
+        if (b) {
+            StdOut.println("PASSED: " + message);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                "FAILED: " + message);
+        }
+    }
+
+    // the operations a benchmark run needs, for either deque
+    private interface Tasks {
+        void push(int task);
+        Integer pop();
+        Integer steal();
+    }
+
+    // the owner pushes n tasks and pops every other one, thieves steal the
+    // rest; returns the sum of the tasks taken and prints the throughput
+    private static long run(String name, final Tasks tasks, int thieves, final int n)
+            throws InterruptedException {
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong taken = new AtomicLong();
+        Thread[] workers = new Thread[thieves];
+        for (int w = 0; w < thieves; w++) {
+            workers[w] = new Thread(new Runnable() {
+                public void run() {
+                    long local = 0;
+                    while (taken.get() < n) {
+                        Integer task = tasks.steal();
+                        if (task != null) {
+                            local += task;
+                            taken.incrementAndGet();
+                        }
+                    }
+                    sum.addAndGet(local);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers)
+            worker.start();
+        long local = 0;
+        for (int i = 0; i < n; i++) {
+            tasks.push(i);
+            if ((i & 1) == 1) {
+                Integer task = tasks.pop();
+                if (task != null) {
+                    local += task;
+                    taken.incrementAndGet();
+                }
+            }
+        }
+        // help drain what the thieves have not taken yet
+        while (taken.get() < n) {
+            Integer task = tasks.pop();
+            if (task != null) {
+                local += task;
+                taken.incrementAndGet();
+            }
+        }
+        sum.addAndGet(local);
+        for (Thread worker : workers)
+            worker.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StdOut.printf("%-13s thieves = %2d  %12.0f tasks/s%n", name, thieves, n / seconds);
+        return sum.get();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThieves = Integer.parseInt(args[0]);
+        int n = Integer.parseInt(args[1]);
+        long expected = (long) n * (n - 1) / 2;
+
+        // taking items from either end leaves no slot holding one
+        WorkStealingDeque<Integer> emptied = new WorkStealingDeque<Integer>();
+        for (int i = 0; i < 3 * MIN_CAPACITY; i++)
+            emptied.addLast(i);
+        while (emptied.size() > 1)
+            emptied.stealFirst();
+        emptied.pollLast();
+        boolean cleared = true;
+        for (int i = 0; i < emptied.items.length(); i++)
+            cleared &= emptied.items.get(i) == null;
+        verify(cleared && emptied.isEmpty(), "no slot still holds a taken item");
+
+        for (int thieves = 1; thieves <= maxThieves; thieves *= 2) {
+            final WorkStealingDeque<Integer> deque = new WorkStealingDeque<Integer>();
+            long sum = run("work-stealing", new Tasks() {
+                public void push(int task) {
+                    deque.addLast(task);
+                }
+                public Integer pop() {
+                    return deque.pollLast();
+                }
+                public Integer steal() {
+                    return deque.stealFirst();
+                }
+            }, thieves, n);
+            verify(sum == expected && deque.isEmpty(), "every task taken exactly once");
+
+            final Deque<Integer> locked = new Deque<Integer>();
+            run("synchronized", new Tasks() {
+                public void push(int task) {
+                    synchronized (locked) {
+                        locked.addLast(task);
+                    }
+                }
+                public Integer pop() {
+                    synchronized (locked) {
+                        return locked.isEmpty() ? null : locked.removeLast();
+                    }
+                }
+                public Integer steal() {
+                    synchronized (locked) {
+                        return locked.isEmpty() ? null : locked.removeFirst();
+                    }
+                }
+            }, thieves, n);
+        }
+    }
+}